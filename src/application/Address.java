@@ -44,15 +44,43 @@ public class Address {
 	 * @param addressString
 	 */
 	public Address(String addressString) {
-		String[] addressComponents = addressString.split(", "); // first element is street, second element is city,
-																// third element is state concatenated with zip code
-		String[] stateAndZipcode = addressComponents[2].split(" "); // first element is state, second element is zip
-																	// code
-
-		this.streetAddr = addressComponents[0].toUpperCase();
-		this.city = addressComponents[1].toUpperCase();
-		this.state = stateAndZipcode[0].toUpperCase();
-		this.zipCode = Integer.parseInt(stateAndZipcode[1]);
+		// find where the components end instead of splitting the string. First field
+		// is street, second field is city, third field is state concatenated with zip
+		// code
+		int streetEnd = separatorPos(addressString, ", ", 0, addressString.length());
+		int cityEnd = separatorPos(addressString, ", ", streetEnd + 2, addressString.length());
+		int stateStart = cityEnd + 2;
+		int stateAndZipEnd = addressString.indexOf(", ", stateStart);
+		if (stateAndZipEnd == -1)
+			stateAndZipEnd = addressString.length();
+
+		// first part of the third field is state, second part is zip code
+		int stateEnd = separatorPos(addressString, " ", stateStart, stateAndZipEnd);
+		int zipEnd = addressString.indexOf(' ', stateEnd + 1);
+		if (zipEnd == -1 || zipEnd > stateAndZipEnd)
+			zipEnd = stateAndZipEnd;
+
+		this.streetAddr = addressString.substring(0, streetEnd).toUpperCase();
+		this.city = addressString.substring(streetEnd + 2, cityEnd).toUpperCase();
+		this.state = addressString.substring(stateStart, stateEnd).toUpperCase();
+		this.zipCode = FieldTokenizer.parseInt(addressString, stateEnd + 1, zipEnd);
+	}
+
+	/**
+	 * Finds the separator that ends a field of an address string.
+	 * 
+	 * @param addressString The address string.
+	 * @param separator     The text after the field.
+	 * @param from          The start of the field.
+	 * @param end           The end of the part of the string the field is in.
+	 * @return The position of the separator.
+	 * @throws IllegalArgumentException If the address string has too few fields.
+	 */
+	private static int separatorPos(String addressString, String separator, int from, int end) {
+		int pos = addressString.indexOf(separator, from);
+		if (pos == -1 || pos + separator.length() > end)
+			throw new IllegalArgumentException("Address is missing a field");
+		return pos;
 	}
 
 	/**
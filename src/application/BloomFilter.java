@@ -0,0 +1,128 @@
+package application;
+
+/**
+ * Simulates a Bloom filter over strings: a compact set that can answer "definitely
+ * not present" without looking anything up, at the cost of sometimes answering
+ * "maybe present" for strings that were never added.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class BloomFilter {
+	private long[] bits;
+	private int numBits;
+	private int numHashes;
+	private int capacity; // number of strings the filter was sized for
+	private int numAdded; // number of strings added
+
+	/**
+	 * Constructs a Bloom filter sized for the given number of strings and false
+	 * positive rate.
+	 *
+	 * @param capacity          The number of strings expected to be added.
+	 * @param falsePositiveRate The wanted chance of a false "maybe present", for
+	 *                          example 0.01.
+	 */
+	public BloomFilter(int capacity, double falsePositiveRate) {
+		this.capacity = Math.max(capacity, 64);
+
+		// standard sizing: m = -n ln(p) / (ln 2)^2 bits and k = m / n ln 2 hashes
+		double ln2 = Math.log(2);
+		long wantedBits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+		numBits = (int) Math.min(Math.max(wantedBits, 64), Integer.MAX_VALUE - 63);
+		numHashes = Math.max(1, (int) Math.round((double) numBits / this.capacity * ln2));
+		bits = new long[(numBits + 63) / 64];
+	}
+
+	/**
+	 * Adds a string to the filter.
+	 *
+	 * @param value The string to be added.
+	 */
+	public void add(String value) {
+		int hash1 = hash1(value);
+		int hash2 = hash2(value);
+		for (int i = 0; i < numHashes; i++) {
+			int bit = bitFor(hash1, hash2, i);
+			bits[bit >>> 6] |= 1L << bit;
+		}
+		numAdded++;
+	}
+
+	/**
+	 * Checks if a string might have been added to the filter.
+	 *
+	 * @param value The string to be checked.
+	 * @return False if the string was definitely never added, true if it might have
+	 *         been.
+	 */
+	public boolean mightContain(String value) {
+		int hash1 = hash1(value);
+		int hash2 = hash2(value);
+		for (int i = 0; i < numHashes; i++) {
+			int bit = bitFor(hash1, hash2, i);
+			if ((bits[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if more strings were added than the filter was sized for.
+	 *
+	 * @return True if the filter should be rebuilt larger.
+	 */
+	public boolean isFull() {
+		return numAdded > capacity;
+	}
+
+	/**
+	 * Gets the number of strings the filter was sized for.
+	 *
+	 * @return The capacity of the filter.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the false positive rate expected from the number of strings added.
+	 *
+	 * @return The expected chance of a false "maybe present".
+	 */
+	public double expectedFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) numHashes * numAdded / numBits), numHashes);
+	}
+
+	/**
+	 * Picks the i-th bit for a string from its two hashes.
+	 */
+	private int bitFor(int hash1, int hash2, int i) {
+		int combined = hash1 + i * hash2;
+		return (combined & Integer.MAX_VALUE) % numBits;
+	}
+
+	/**
+	 * Hashes a string with String.hashCode and spreads the bits.
+	 */
+	private static int hash1(String value) {
+		int h = value.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	/**
+	 * Hashes a string with FNV-1a, independently of hash1. The result is odd so
+	 * it is never 0.
+	 */
+	private static int hash2(String value) {
+		int h = 0x811c9dc5;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x01000193;
+		}
+		return h | 1;
+	}
+}
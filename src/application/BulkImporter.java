@@ -0,0 +1,708 @@
+package application;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a new database from CSV files of users and interactions in one go,
+ * instead of registering the users one at a time, which rewrites the database
+ * for every user. The files are read a row at a time into compact in-memory
+ * lists, interaction names are resolved to records with hash indexes, exposure
+ * statuses are computed once from every user who tested positive, and the
+ * database file is written in one sequential pass.
+ * <p>
+ * The users file has the columns name, street, city, state, zip and test
+ * status, which is NOT TESTED if it is left out. The interactions file has the
+ * columns name, street, city, state and zip of a user followed by the name of
+ * someone they interacted with, or several names separated by commas. A header
+ * row starting with "name" is skipped in both files.
+ * <p>
+ * Interactions are linked the same way registering links them: two users are
+ * only connected when each of them named the other. A name that no user named
+ * back gets an empty record of its own, which is merged into that user's
+ * record when they register or add the interaction later.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class BulkImporter {
+	private static final String[] TEST_STATUSES = { "NOT TESTED", "TESTED NEGATIVE", "TESTED POSITIVE" };
+	private static final int PROGRESS_ROWS = 100000; // rows between progress reports
+	private static final long PROGRESS_NANOS = 5_000_000_000L; // longest time between progress reports
+	private static final int WRITE_BUFFER_SIZE = 1 << 20; // characters buffered before each write
+	private static final int MAX_REPORTED_ERRORS = 20; // rejected rows printed before they are only counted
+
+	private PrintStream progressOut;
+	private ImportReport report;
+
+	// users in the order they were read
+	private List<String> userLines = new ArrayList<>(); // first record line, name|address
+	private List<String> userStatuses = new ArrayList<>(); // test status
+	private IntList userNameIds = new IntList(); // name id of each user
+	private Map<String, Integer> userKeys = new HashMap<>(); // name|address -> user
+
+	// every distinct name, of users and of interactions, by name id
+	private List<String> names = new ArrayList<>();
+	private Map<String, Integer> nameIds = new HashMap<>();
+	private IntList firstUserWithName = new IntList(); // name id -> first user with the name, or -1
+	private IntList lastUserWithName = new IntList(); // name id -> last user with the name, or -1
+	private IntList nextUserWithName = new IntList(); // user -> next user with the same name, or -1
+
+	// the interactions each user named, one entry per name in the order read
+	private IntList mentionUsers = new IntList();
+	private IntList mentionNames = new IntList();
+
+	// names each user named, deduplicated and in the order read, by user
+	private int[] mentionStarts;
+	private int[] mentionList;
+	private int[] sortedMentionList; // the same names sorted, for lookups
+
+	// empty records made for names no user named back, by placeholder number
+	private IntList placeholderNameIds = new IntList();
+	private IntList placeholderSources = new IntList(); // user who named the placeholder
+
+	// interactions of every record, users first and then placeholders
+	private int[] neighbourStarts;
+	private int[] neighbours;
+	private int[] exposureLevels;
+
+	/**
+	 * Constructs an importer that reports its progress to standard output.
+	 */
+	public BulkImporter() {
+		this(System.out);
+	}
+
+	/**
+	 * Constructs an importer that reports its progress to the given stream.
+	 *
+	 * @param progressOut The stream progress is reported to.
+	 */
+	public BulkImporter(PrintStream progressOut) {
+		this.progressOut = progressOut;
+	}
+
+	/**
+	 * Imports users and interactions from the command line.
+	 *
+	 * @param args The users file, the interactions file and the database file to
+	 *             be created.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.err.println("Usage: BulkImporter <users.csv> <interactions.csv> <database file>");
+			System.exit(2);
+		}
+
+		try {
+			ImportReport report = new BulkImporter().importFiles(new File(args[0]), new File(args[1]),
+					new File(args[2]));
+			System.out.println("Imported " + report);
+		} catch (IOException | IllegalArgumentException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Builds a new database file from a users file and an interactions file.
+	 *
+	 * @param usersFile        The CSV file of users.
+	 * @param interactionsFile The CSV file of interactions.
+	 * @param databaseFile     The database file to be created. It must not have
+	 *                         any records yet.
+	 * @return The number of rows read and records written.
+	 * @throws IOException              If a file cannot be read or written.
+	 * @throws IllegalArgumentException If the database file already has records.
+	 */
+	public ImportReport importFiles(File usersFile, File interactionsFile, File databaseFile) throws IOException {
+		// records are only ever added to a new database, so nothing has to be merged
+		if (databaseFile.length() > 0 || new File(databaseFile.getPath() + ".log").length() > 0)
+			throw new IllegalArgumentException("Database already has records: " + databaseFile);
+
+		long startTime = System.nanoTime();
+		report = new ImportReport();
+
+		readUsers(usersFile);
+		readInteractions(interactionsFile);
+		linkInteractions();
+		computeExposures();
+		writeDatabase(databaseFile);
+
+		report.totalNanos = System.nanoTime() - startTime;
+		return report;
+	}
+
+	/**
+	 * Reads every user into the in-memory lists. Rows that are not valid, and
+	 * users already read, are left out.
+	 */
+	private void readUsers(File usersFile) throws IOException {
+		Progress progress = new Progress("Reading users");
+		try (CsvReader csv = openCsv(usersFile)) {
+			String[] row;
+			boolean firstRow = true;
+			while ((row = csv.readRow()) != null) {
+				progress.row();
+				boolean header = firstRow && isHeader(row);
+				firstRow = false;
+				if (header)
+					continue;
+
+				report.numUserRows++;
+				// users without a test status have not been tested
+				String status = row.length < 6 ? "" : UserIndex.canonicalName(row[5]);
+				if (status.equals(""))
+					status = "NOT TESTED";
+				User user = readUser(row, 5);
+				if (user == null || !Arrays.asList(TEST_STATUSES).contains(status)) {
+					reject(usersFile, csv, "expected name, street, city, state, 5 digit zip and test status");
+					continue;
+				}
+
+				String key = UserIndex.registeredKey(user);
+				if (userKeys.containsKey(key)) {
+					report.numDuplicateUsers++;
+					continue;
+				}
+
+				// add the user and put them in the list of users with their name
+				int userNum = userLines.size();
+				int nameId = nameId(user.getName());
+				userKeys.put(key, userNum);
+				userLines.add(user.toString());
+				userStatuses.add(status);
+				userNameIds.add(nameId);
+				nextUserWithName.add(-1);
+				if (firstUserWithName.get(nameId) == -1)
+					firstUserWithName.set(nameId, userNum);
+				else
+					nextUserWithName.set(lastUserWithName.get(nameId), userNum);
+				lastUserWithName.set(nameId, userNum);
+			}
+		}
+		report.numUsers = userLines.size();
+		progress.finish();
+	}
+
+	/**
+	 * Reads every interaction into the in-memory lists, as the name id of the
+	 * interaction named by a user.
+	 */
+	private void readInteractions(File interactionsFile) throws IOException {
+		Progress progress = new Progress("Reading interactions");
+		try (CsvReader csv = openCsv(interactionsFile)) {
+			String[] row;
+			boolean firstRow = true;
+			while ((row = csv.readRow()) != null) {
+				progress.row();
+				boolean header = firstRow && isHeader(row);
+				firstRow = false;
+				if (header)
+					continue;
+
+				report.numInteractionRows++;
+				User user = readUser(row, 6);
+				Integer userNum = user == null ? null : userKeys.get(UserIndex.registeredKey(user));
+				if (userNum == null) {
+					reject(interactionsFile, csv, "expected the name and address of a user in the users file");
+					continue;
+				}
+
+				// one row can name several interactions, like the interactions typed in the GUI
+				for (String name : FieldTokenizer.split(row[5], ',')) {
+					String canonical = UserIndex.canonicalName(name);
+					if (canonical.equals(""))
+						continue;
+					mentionUsers.add(userNum);
+					mentionNames.add(nameId(canonical));
+				}
+			}
+		}
+		progress.finish();
+	}
+
+	/**
+	 * Connects every pair of users who named each other, and makes an empty
+	 * record for every other name a user named.
+	 */
+	private void linkInteractions() {
+		Progress progress = new Progress("Linking interactions");
+		int numUsers = userLines.size();
+		groupMentionsByUser(numUsers);
+
+		// each connection is stored once from each side
+		IntList edgeFrom = new IntList();
+		IntList edgeTo = new IntList();
+		for (int user = 0; user < numUsers; user++) {
+			int userNameId = userNameIds.get(user);
+			for (int i = mentionStarts[user]; i < mentionStarts[user + 1]; i++) {
+				progress.row();
+				int nameId = mentionList[i];
+
+				// the first user with the name who named this user back is the interaction
+				int interaction = firstUserWithName.get(nameId);
+				while (interaction != -1 && (interaction == user || !mentions(interaction, userNameId))) {
+					interaction = nextUserWithName.get(interaction);
+				}
+
+				if (interaction == -1) {
+					// nobody with the name named this user, so the name gets an empty record
+					interaction = numUsers + placeholderNameIds.size();
+					placeholderNameIds.add(nameId);
+					placeholderSources.add(user);
+				}
+				edgeFrom.add(user);
+				edgeTo.add(interaction);
+			}
+		}
+		report.numPlaceholders = placeholderNameIds.size();
+
+		buildNeighbourLists(numUsers + placeholderNameIds.size(), edgeFrom, edgeTo);
+		progress.finish();
+	}
+
+	/**
+	 * Groups the names every user named by user, leaving out names a user named
+	 * more than once.
+	 */
+	private void groupMentionsByUser(int numUsers) {
+		mentionStarts = new int[numUsers + 1];
+		for (int i = 0; i < mentionUsers.size(); i++) {
+			mentionStarts[mentionUsers.get(i) + 1]++;
+		}
+		for (int user = 0; user < numUsers; user++) {
+			mentionStarts[user + 1] += mentionStarts[user];
+		}
+
+		int[] filled = Arrays.copyOf(mentionStarts, numUsers);
+		int[] grouped = new int[mentionUsers.size()];
+		for (int i = 0; i < mentionUsers.size(); i++) {
+			grouped[filled[mentionUsers.get(i)]++] = mentionNames.get(i);
+		}
+		mentionUsers = null;
+		mentionNames = null;
+
+		// keep the first time each user named each name
+		int[] lastNamedBy = new int[names.size()];
+		Arrays.fill(lastNamedBy, -1);
+		int numKept = 0;
+		for (int user = 0; user < numUsers; user++) {
+			int start = mentionStarts[user];
+			mentionStarts[user] = numKept;
+			for (int i = start; i < mentionStarts[user + 1]; i++) {
+				if (lastNamedBy[grouped[i]] != user) {
+					lastNamedBy[grouped[i]] = user;
+					grouped[numKept++] = grouped[i];
+				}
+			}
+		}
+		mentionStarts[numUsers] = numKept;
+		mentionList = Arrays.copyOf(grouped, numKept);
+		report.numInteractions = numKept;
+
+		sortedMentionList = mentionList.clone();
+		for (int user = 0; user < numUsers; user++) {
+			Arrays.sort(sortedMentionList, mentionStarts[user], mentionStarts[user + 1]);
+		}
+	}
+
+	/**
+	 * Checks if a user named an interaction with the given name.
+	 */
+	private boolean mentions(int user, int nameId) {
+		return Arrays.binarySearch(sortedMentionList, mentionStarts[user], mentionStarts[user + 1], nameId) >= 0;
+	}
+
+	/**
+	 * Builds the interactions of every record from the connections, in the order
+	 * they were made and without repeating a connection made from both sides.
+	 */
+	private void buildNeighbourLists(int numRecords, IntList edgeFrom, IntList edgeTo) {
+		neighbourStarts = new int[numRecords + 1];
+		for (int i = 0; i < edgeFrom.size(); i++) {
+			neighbourStarts[edgeFrom.get(i) + 1]++;
+			neighbourStarts[edgeTo.get(i) + 1]++;
+		}
+		for (int record = 0; record < numRecords; record++) {
+			neighbourStarts[record + 1] += neighbourStarts[record];
+		}
+
+		int[] filled = Arrays.copyOf(neighbourStarts, numRecords);
+		int[] all = new int[edgeFrom.size() * 2];
+		for (int i = 0; i < edgeFrom.size(); i++) {
+			all[filled[edgeFrom.get(i)]++] = edgeTo.get(i);
+			all[filled[edgeTo.get(i)]++] = edgeFrom.get(i);
+		}
+
+		// two users who named each other made the same connection twice
+		int[] lastNeighbourOf = new int[numRecords];
+		Arrays.fill(lastNeighbourOf, -1);
+		int numKept = 0;
+		for (int record = 0; record < numRecords; record++) {
+			int start = neighbourStarts[record];
+			neighbourStarts[record] = numKept;
+			for (int i = start; i < neighbourStarts[record + 1]; i++) {
+				if (lastNeighbourOf[all[i]] != record) {
+					lastNeighbourOf[all[i]] = record;
+					all[numKept++] = all[i];
+				}
+			}
+		}
+		neighbourStarts[numRecords] = numKept;
+		neighbours = Arrays.copyOf(all, numKept);
+		report.numLinks = (numKept - 2L * placeholderNameIds.size()) / 2;
+	}
+
+	/**
+	 * Computes every record's exposure level with one search from all users who
+	 * tested positive at once, like ExposureRebuilder does for an existing
+	 * database.
+	 */
+	private void computeExposures() {
+		Progress progress = new Progress("Computing exposures");
+		int numRecords = neighbourStarts.length - 1;
+		exposureLevels = new int[numRecords];
+		Arrays.fill(exposureLevels, -1);
+
+		IntList frontier = new IntList();
+		for (int user = 0; user < userLines.size(); user++) {
+			if (userStatuses.get(user).equals("TESTED POSITIVE")) {
+				exposureLevels[user] = 0;
+				frontier.add(user);
+			}
+		}
+
+		// go one level further from all of them at once until the third degree is
+		// reached
+		for (int level = 1; level <= ExposurePropagator.MAX_EXPOSURE_LEVEL && frontier.size() > 0; level++) {
+			IntList next = new IntList();
+			for (int i = 0; i < frontier.size(); i++) {
+				int record = frontier.get(i);
+				for (int j = neighbourStarts[record]; j < neighbourStarts[record + 1]; j++) {
+					progress.row();
+					int neighbour = neighbours[j];
+					if (exposureLevels[neighbour] == -1) {
+						exposureLevels[neighbour] = level;
+						next.add(neighbour);
+						report.numExposed++;
+					}
+				}
+			}
+			frontier = next;
+		}
+		progress.finish();
+	}
+
+	/**
+	 * Writes every record to a temporary file in record order, syncs it to disk
+	 * and moves it over the database file, so a crash never leaves part of a
+	 * database behind.
+	 */
+	private void writeDatabase(File databaseFile) throws IOException {
+		Progress progress = new Progress("Writing records");
+		Path target = databaseFile.getAbsoluteFile().toPath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		int numUsers = userLines.size();
+		int numRecords = neighbourStarts.length - 1;
+
+		FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(fileOut, StandardCharsets.UTF_8),
+				WRITE_BUFFER_SIZE)) {
+			StringBuilder line = new StringBuilder();
+			for (int record = 0; record < numRecords; record++) {
+				progress.row();
+				boolean isUser = record < numUsers;
+
+				// name|address and test status, empty for an empty record
+				if (isUser) {
+					out.write(userLines.get(record));
+					out.write('\n');
+					out.write(userStatuses.get(record));
+					out.write('\n');
+				} else {
+					out.write(names.get(placeholderNameIds.get(record - numUsers)));
+					out.write("|\n\n");
+				}
+
+				// exposure status, empty for users who tested positive or were not exposed
+				if (exposureLevels[record] > 0)
+					out.write(Integer.toString(exposureLevels[record]));
+				out.write('\n');
+
+				// names of the interactions, or the name of the user who named an empty record
+				line.setLength(0);
+				if (isUser) {
+					for (int i = mentionStarts[record]; i < mentionStarts[record + 1]; i++) {
+						line.append(names.get(mentionList[i])).append('|');
+					}
+					if (line.length() == 0)
+						line.append('|');
+				} else {
+					line.append(names.get(userNameIds.get(placeholderSources.get(record - numUsers)))).append('|');
+				}
+				line.append('\n');
+
+				// record line numbers of the interactions
+				for (int i = neighbourStarts[record]; i < neighbourStarts[record + 1]; i++) {
+					line.append(neighbours[i] * 6).append('|');
+				}
+				line.append("\n\n");
+				out.append(line);
+			}
+
+			// the records must be on disk before the move makes them the database
+			out.flush();
+			fileOut.getChannel().force(true);
+		}
+
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		// sync the directory so the move itself survives a crash
+		try {
+			FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ);
+			directory.force(true);
+			directory.close();
+		} catch (IOException e) {
+			// some systems cannot open directories; the file itself is synced
+		}
+		report.numRecords = numRecords;
+		progress.finish();
+	}
+
+	/**
+	 * Reads the user in the first 5 columns of a row.
+	 *
+	 * @param row        The fields of the row.
+	 * @param numColumns The number of columns the row must have.
+	 * @return The user, or null if the row is too short, the zip code is not 5
+	 *         digits or a field contains a | or a line break.
+	 */
+	private static User readUser(String[] row, int numColumns) {
+		if (row.length < numColumns)
+			return null;
+		for (int i = 0; i < numColumns; i++) {
+			// a | or line break would split the field when the database is read
+			if (row[i].contains("|") || row[i].contains("\n") || row[i].contains("\r"))
+				return null;
+		}
+
+		String name = UserIndex.canonicalName(row[0]);
+		String zip = row[4].trim();
+		if (name.equals("") || !zip.matches("[0-9]{5}"))
+			return null;
+		return new User(name, row[1].trim(), row[2].trim(), row[3].trim(), Integer.parseInt(zip));
+	}
+
+	/**
+	 * Gets the id of a canonical name, giving it the next id if it is new.
+	 */
+	private int nameId(String canonicalName) {
+		Integer id = nameIds.get(canonicalName);
+		if (id == null) {
+			id = names.size();
+			names.add(canonicalName);
+			nameIds.put(canonicalName, id);
+			firstUserWithName.add(-1);
+			lastUserWithName.add(-1);
+		}
+		return id;
+	}
+
+	/**
+	 * Checks if the first row of a file is a header row. The first row is not
+	 * always on line 1, since blank lines before it are skipped.
+	 */
+	private static boolean isHeader(String[] row) {
+		return row[0].trim().equalsIgnoreCase("name");
+	}
+
+	/**
+	 * Counts a row that could not be imported, and prints why for the first ones
+	 * along with the progress reports.
+	 */
+	private void reject(File file, CsvReader csv, String reason) {
+		report.numRejectedRows++;
+		if (report.numRejectedRows <= MAX_REPORTED_ERRORS)
+			progressOut.println(file.getName() + " line " + csv.getLineNumber() + " skipped: " + reason);
+	}
+
+	private static CsvReader openCsv(File file) throws IOException {
+		return new CsvReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reports how many rows a step of the import has done and how fast, every
+	 * PROGRESS_ROWS rows or every few seconds, whichever comes first.
+	 */
+	private class Progress {
+		private String step;
+		private long startTime = System.nanoTime();
+		private long lastReportTime = startTime;
+		private long numRows;
+
+		private Progress(String step) {
+			this.step = step;
+		}
+
+		/**
+		 * Counts one row, and reports progress if it is time to.
+		 */
+		private void row() {
+			numRows++;
+			if (numRows % PROGRESS_ROWS == 0) {
+				report();
+			} else if ((numRows & 1023) == 0 && System.nanoTime() - lastReportTime >= PROGRESS_NANOS) {
+				report();
+			}
+		}
+
+		/**
+		 * Reports the total number of rows of the step.
+		 */
+		private void finish() {
+			report();
+		}
+
+		private void report() {
+			long now = System.nanoTime();
+			lastReportTime = now;
+			double seconds = Math.max(now - startTime, 1) / 1e9;
+			progressOut.printf("%s: %d rows, %.0f rows/s, %.1f s%n", step, numRows, numRows / seconds, seconds);
+		}
+	}
+
+	/**
+	 * Stores how many rows an import read and how many records it wrote.
+	 */
+	public static class ImportReport {
+		long numUserRows; // rows of the users file, without the header
+		long numUsers; // users imported
+		long numDuplicateUsers; // users left out because they were already read
+		long numInteractionRows; // rows of the interactions file, without the header
+		long numInteractions; // distinct names named by the users
+		long numLinks; // pairs of users who named each other
+		long numPlaceholders; // empty records made for names no user named back
+		long numRejectedRows; // rows of either file that were not valid
+		long numExposed; // records given an exposure status
+		long numRecords; // records written
+		long totalNanos; // time spent on the whole import
+
+		/**
+		 * Gets the number of users imported.
+		 *
+		 * @return The number of users.
+		 */
+		public long getNumUsers() {
+			return numUsers;
+		}
+
+		/**
+		 * Gets the number of users left out because a user with the same name and
+		 * address was already read.
+		 *
+		 * @return The number of duplicate users.
+		 */
+		public long getNumDuplicateUsers() {
+			return numDuplicateUsers;
+		}
+
+		/**
+		 * Gets the number of distinct interaction names the users named.
+		 *
+		 * @return The number of interactions.
+		 */
+		public long getNumInteractions() {
+			return numInteractions;
+		}
+
+		/**
+		 * Gets the number of pairs of users who named each other and were
+		 * connected.
+		 *
+		 * @return The number of connected pairs.
+		 */
+		public long getNumLinks() {
+			return numLinks;
+		}
+
+		/**
+		 * Gets the number of empty records made for names no user named back.
+		 *
+		 * @return The number of empty records.
+		 */
+		public long getNumPlaceholders() {
+			return numPlaceholders;
+		}
+
+		/**
+		 * Gets the number of rows that were not valid and were left out.
+		 *
+		 * @return The number of rejected rows.
+		 */
+		public long getNumRejectedRows() {
+			return numRejectedRows;
+		}
+
+		/**
+		 * Gets the number of records given an exposure status.
+		 *
+		 * @return The number of exposed records.
+		 */
+		public long getNumExposed() {
+			return numExposed;
+		}
+
+		/**
+		 * Gets the number of records written to the database.
+		 *
+		 * @return The number of records.
+		 */
+		public long getNumRecords() {
+			return numRecords;
+		}
+
+		/**
+		 * Gets the time spent on the whole import.
+		 *
+		 * @return The elapsed time in nanoseconds.
+		 */
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		/**
+		 * Returns the report as a string
+		 */
+		@Override
+		public String toString() {
+			return "users=" + numUsers + " duplicates=" + numDuplicateUsers + " interactions=" + numInteractions
+					+ " links=" + numLinks + " placeholders=" + numPlaceholders + " rejected=" + numRejectedRows
+					+ " exposed=" + numExposed + " records=" + numRecords + " seconds="
+					+ String.format("%.1f", totalNanos / 1e9);
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package application;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simulates the graph of interactions between records, stored as int arrays
+ * instead of the "|" separated line numbers on the 5th line of each record.
+ * Records are numbered by their position in the database (record line number /
+ * 6). Rows changed after the graph is built are kept in a small buffer that is
+ * merged into the arrays once it grows large enough. Changed rows are turned
+ * back into text with rowToLine() only when they are saved.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ContactGraph {
+	private int[] offsets; // neighbours of record r are at offsets[r] until offsets[r + 1]
+	private int[] neighbours; // record numbers of every record's interactions
+	private int numRecords; // number of records in the graph
+	private Map<Integer, IntList> changedRows = new HashMap<>(); // rows changed since last merge
+	private int numChangedEntries; // number of neighbours stored in changedRows
+	private Map<Integer, Set<Integer>> rowSets = new HashMap<>(); // lookup sets of large changed rows
+
+	// rows with more interactions than this get a set so duplicates are found
+	// without searching the whole row
+	private static final int ROW_SET_THRESHOLD = 32;
+
+	/**
+	 * Constructs the graph from the 5th line of every record in the database.
+	 *
+	 * @param databaseLines The lines of the database.
+	 */
+	public ContactGraph(List<String> databaseLines) {
+		numRecords = (databaseLines.size() + 5) / 6;
+		offsets = new int[numRecords + 1];
+
+		// count the interactions of every record
+		IntList row = new IntList();
+		for (int record = 0; record < numRecords; record++) {
+			row.clear();
+			parseRecordNums(interactionsRecLine(databaseLines, record), row);
+			offsets[record + 1] = offsets[record] + row.size();
+		}
+
+		// copy the interactions of every record into the neighbours array
+		neighbours = new int[offsets[numRecords]];
+		for (int record = 0; record < numRecords; record++) {
+			row.clear();
+			parseRecordNums(interactionsRecLine(databaseLines, record), row);
+			for (int i = 0; i < row.size(); i++) {
+				neighbours[offsets[record] + i] = row.get(i);
+			}
+		}
+	}
+
+	/**
+	 * Constructs the graph from arrays that were already parsed, for example by
+	 * ParallelDatabaseLoader.
+	 *
+	 * @param offsets    Neighbours of record r are at offsets[r] until
+	 *                   offsets[r + 1].
+	 * @param neighbours Record numbers of every record's interactions.
+	 */
+	public ContactGraph(int[] offsets, int[] neighbours) {
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		numRecords = offsets.length - 1;
+	}
+
+	/**
+	 * Gets the 5th line of a record, or an empty string if the file ends early.
+	 */
+	private static String interactionsRecLine(List<String> databaseLines, int record) {
+		int lineNum = record * 6 + 4;
+		return lineNum < databaseLines.size() ? databaseLines.get(lineNum) : "";
+	}
+
+	/**
+	 * Parses "|" separated record line numbers into record numbers without
+	 * splitting the line.
+	 *
+	 * @param line The line numbers separated by a |.
+	 * @param out  The list the record numbers are added to.
+	 */
+	public static void parseRecordNums(CharSequence line, IntList out) {
+		int value = 0;
+		boolean inNumber = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				inNumber = true;
+			} else {
+				// a separator ends the current number
+				if (inNumber)
+					out.add(value / 6);
+				value = 0;
+				inNumber = false;
+			}
+		}
+
+		// the last number might not be followed by a separator
+		if (inNumber)
+			out.add(value / 6);
+	}
+
+	/**
+	 * Gets the number of records in the graph.
+	 *
+	 * @return The number of records.
+	 */
+	public int numRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Adds a record with no interactions to the end of the graph.
+	 *
+	 * @return The record number of the new record.
+	 */
+	public int addRecord() {
+		return numRecords++;
+	}
+
+	/**
+	 * Adds an interaction to the end of a record's interactions, unless the record
+	 * already has that interaction.
+	 *
+	 * @param record    The record number of the record.
+	 * @param neighbour The record number of the interaction.
+	 * @return True if the interaction was added, false if it was already there.
+	 */
+	public boolean addNeighbour(int record, int neighbour) {
+		IntList row = changedRow(record);
+		if (contains(record, row, neighbour))
+			return false;
+
+		row.add(neighbour);
+		Set<Integer> rowSet = rowSets.get(record);
+		if (rowSet != null)
+			rowSet.add(neighbour);
+		numChangedEntries++;
+		mergeIfLarge();
+		return true;
+	}
+
+	/**
+	 * Replaces one interaction of a record with another, comparing whole record
+	 * numbers. If the record already has the new interaction, the old one is just
+	 * removed so the interaction is not listed twice.
+	 *
+	 * @param record       The record number of the record.
+	 * @param oldNeighbour The record number of the interaction to be replaced.
+	 * @param newNeighbour The record number of the interaction replacing it.
+	 * @return True if the record's interactions changed.
+	 */
+	public boolean replaceNeighbour(int record, int oldNeighbour, int newNeighbour) {
+		IntList row = changedRow(record);
+		int pos = row.indexOf(oldNeighbour);
+		if (pos == -1 || oldNeighbour == newNeighbour)
+			return false;
+
+		boolean alreadyThere = contains(record, row, newNeighbour);
+		rowSets.remove(record);
+		while (pos != -1) {
+			if (alreadyThere) {
+				row.remove(pos);
+				numChangedEntries--;
+			} else {
+				row.set(pos, newNeighbour);
+				alreadyThere = true;
+			}
+			pos = row.indexOf(oldNeighbour);
+		}
+		mergeIfLarge();
+		return true;
+	}
+
+	/**
+	 * Removes an interaction from a record, for example one with a record that was
+	 * merged into it.
+	 *
+	 * @param record    The record number of the record.
+	 * @param neighbour The record number of the interaction to be removed.
+	 * @return True if the record had the interaction.
+	 */
+	public boolean removeNeighbour(int record, int neighbour) {
+		IntList row = changedRow(record);
+		int pos = row.indexOf(neighbour);
+		if (pos == -1)
+			return false;
+
+		rowSets.remove(record);
+		while (pos != -1) {
+			row.remove(pos);
+			numChangedEntries--;
+			pos = row.indexOf(neighbour);
+		}
+		mergeIfLarge();
+		return true;
+	}
+
+	/**
+	 * Checks if a changed row has an interaction, using the row's set if it is
+	 * large enough to have one.
+	 */
+	private boolean contains(int record, IntList row, int neighbour) {
+		if (row.size() <= ROW_SET_THRESHOLD)
+			return row.indexOf(neighbour) != -1;
+
+		Set<Integer> rowSet = rowSets.get(record);
+		if (rowSet == null) {
+			rowSet = new HashSet<>(row.size() * 2);
+			for (int i = 0; i < row.size(); i++) {
+				rowSet.add(row.get(i));
+			}
+			rowSets.put(record, rowSet);
+		}
+		return rowSet.contains(neighbour);
+	}
+
+	/**
+	 * Replaces all of a record's interactions.
+	 *
+	 * @param record The record number of the record.
+	 * @param line   Record line numbers, separated by a |, of the record's
+	 *               interactions.
+	 */
+	public void setNeighbours(int record, String line) {
+		IntList row = changedRow(record);
+		numChangedEntries -= row.size();
+		row.clear();
+		rowSets.remove(record);
+		parseRecordNums(line, row);
+		numChangedEntries += row.size();
+		mergeIfLarge();
+	}
+
+	/**
+	 * Adds the record numbers of a record's interactions to the given list.
+	 *
+	 * @param record The record number of the record.
+	 * @param out    The list the record numbers are added to.
+	 */
+	public void copyNeighbours(int record, IntList out) {
+		IntList row = changedRows.get(record);
+		if (row != null) {
+			for (int i = 0; i < row.size(); i++) {
+				out.add(row.get(i));
+			}
+		} else if (record < offsets.length - 1) {
+			out.addAll(neighbours, offsets[record], offsets[record + 1]);
+		}
+	}
+
+	/**
+	 * Turns a record's interactions back into the text stored on the 5th line of
+	 * the record.
+	 *
+	 * @param record The record number of the record.
+	 * @return Record line numbers of the interactions, each followed by a |.
+	 */
+	public String rowToLine(int record) {
+		IntList row = new IntList(degree(record));
+		copyNeighbours(record, row);
+
+		StringBuilder line = new StringBuilder(row.size() * 8);
+		for (int i = 0; i < row.size(); i++) {
+			line.append(row.get(i) * 6).append('|');
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Gets the number of interactions a record has.
+	 *
+	 * @param record The record number of the record.
+	 * @return The number of interactions.
+	 */
+	public int degree(int record) {
+		IntList row = changedRows.get(record);
+		if (row != null)
+			return row.size();
+		if (record < offsets.length - 1)
+			return offsets[record + 1] - offsets[record];
+		return 0;
+	}
+
+	/**
+	 * Gets the row of a record in the changed rows buffer, copying the record's
+	 * interactions into the buffer first if they are not there yet.
+	 */
+	private IntList changedRow(int record) {
+		IntList row = changedRows.get(record);
+		if (row == null) {
+			row = new IntList(degree(record) + 1);
+			copyNeighbours(record, row);
+			numChangedEntries += row.size();
+			changedRows.put(record, row);
+		}
+		return row;
+	}
+
+	/**
+	 * Merges the changed rows into the arrays once they hold more than an eighth
+	 * of all interactions.
+	 */
+	private void mergeIfLarge() {
+		if (numChangedEntries > Math.max(1024, neighbours.length / 8))
+			merge();
+	}
+
+	/**
+	 * Rebuilds the arrays so they include every changed row.
+	 */
+	public void merge() {
+		ContactGraph merged = snapshot();
+		offsets = merged.offsets;
+		neighbours = merged.neighbours;
+		changedRows.clear();
+		rowSets.clear();
+		numChangedEntries = 0;
+	}
+
+	/**
+	 * Copies the graph, including every changed row, into arrays of a new graph,
+	 * so the copy can be searched while this graph keeps changing.
+	 *
+	 * @return The copy of the graph.
+	 */
+	public ContactGraph snapshot() {
+		int[] newOffsets = new int[numRecords + 1];
+		for (int record = 0; record < numRecords; record++) {
+			newOffsets[record + 1] = newOffsets[record] + degree(record);
+		}
+
+		int[] newNeighbours = new int[newOffsets[numRecords]];
+		IntList row = new IntList();
+		for (int record = 0; record < numRecords; record++) {
+			row.clear();
+			copyNeighbours(record, row);
+			for (int i = 0; i < row.size(); i++) {
+				newNeighbours[newOffsets[record] + i] = row.get(i);
+			}
+		}
+		return new ContactGraph(newOffsets, newNeighbours);
+	}
+}
@@ -0,0 +1,125 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates a reader of comma separated values that reads one row at a time,
+ * so a file of any size can be read without loading it. Fields may be quoted
+ * with double quotes, in which case they can contain commas, line breaks and
+ * doubled quotes that stand for one quote. Blank lines are skipped.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class CsvReader implements Closeable {
+	private BufferedReader reader;
+	private long lineNumber; // lines read so far
+	private boolean firstLine = true; // whether a byte order mark may still be skipped
+
+	/**
+	 * Constructs a reader of the given text.
+	 *
+	 * @param in The text to be read.
+	 */
+	public CsvReader(Reader in) {
+		reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+	}
+
+	/**
+	 * Reads the next row.
+	 *
+	 * @return The fields of the row, or null at the end of the text.
+	 * @throws IOException If the text cannot be read, or it ends inside a quoted
+	 *                     field.
+	 */
+	public String[] readRow() throws IOException {
+		String line = nextLine();
+		while (line != null && line.trim().isEmpty()) {
+			line = nextLine();
+		}
+		if (line == null)
+			return null;
+
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false; // whether the current position is inside quotes
+		int pos = 0;
+		while (true) {
+			if (pos == line.length()) {
+				if (!quoted)
+					break;
+
+				// a quoted field goes on to the next line
+				String nextLine = nextLine();
+				if (nextLine == null)
+					throw new IOException("Unterminated quoted field at line " + lineNumber);
+				field.append('\n');
+				line = nextLine;
+				pos = 0;
+				continue;
+			}
+
+			char c = line.charAt(pos++);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (pos < line.length() && line.charAt(pos) == '"') {
+					// a doubled quote stands for one quote
+					field.append('"');
+					pos++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * Gets the number of the last line read, counting from 1.
+	 *
+	 * @return The line number.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Closes the text being read.
+	 */
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Reads the next line, without the byte order mark some programs write at the
+	 * start of a file.
+	 */
+	private String nextLine() throws IOException {
+		String line = reader.readLine();
+		if (line == null)
+			return null;
+
+		lineNumber++;
+		if (firstLine) {
+			firstLine = false;
+			if (line.startsWith("\uFEFF"))
+				line = line.substring(1);
+		}
+		return line;
+	}
+}
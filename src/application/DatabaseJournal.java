@@ -0,0 +1,188 @@
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+//NOTE: Journal will be in the form
+//LineNum|New contents of line
+//LineNum|New contents of line
+//COMMIT
+//
+//Every batch of changed lines ends with a COMMIT line. A batch without a COMMIT
+//line (for example, one cut off by a crash) is ignored when the journal is
+//replayed, and cut off the end of the journal.
+
+/**
+ * Simulates a write-ahead log that stores changed database lines so the entire
+ * database file does not have to be rewritten after every change.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class DatabaseJournal {
+	private static final String COMMIT = "COMMIT";
+
+	private File journalFile;
+	private int numEntries; // number of changed lines currently in the journal
+
+	/**
+	 * Constructs a journal that sits next to the given database file.
+	 *
+	 * @param databaseFile The database file the journal belongs to.
+	 */
+	public DatabaseJournal(File databaseFile) {
+		journalFile = new File(databaseFile.getPath() + ".log");
+	}
+
+	/**
+	 * Applies every committed batch in the journal to the given database lines.
+	 * A batch cut off by a crash is cut off the journal as well, so the next
+	 * batch appended starts on a line of its own instead of continuing the
+	 * partial one.
+	 *
+	 * @param databaseLines The lines of the database file.
+	 * @return The number of changed lines that were applied.
+	 */
+	public int replay(List<String> databaseLines) {
+		numEntries = 0;
+
+		// if there is no journal, there is nothing to replay
+		if (!journalFile.exists())
+			return 0;
+
+		long committedLength = 0; // bytes up to the end of the last COMMIT line
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(journalFile));
+
+			// changed lines of the batch currently being read
+			List<String> batch = new ArrayList<>();
+			ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+			long position = 0;
+			int b;
+			while ((b = in.read()) != -1) {
+				position++;
+				if (b != '\n') {
+					lineBytes.write(b);
+					continue;
+				}
+
+				// only lines ending in a line break are complete
+				String line = new String(lineBytes.toByteArray(), StandardCharsets.UTF_8);
+				lineBytes.reset();
+
+				// if the batch is complete, apply it to the database lines
+				if (line.equals(COMMIT)) {
+					for (String entry : batch) {
+						applyEntry(databaseLines, entry);
+					}
+					numEntries += batch.size();
+					batch.clear();
+					committedLength = position;
+				} else {
+					batch.add(line);
+				}
+			}
+			in.close();
+
+			// drop the partial batch, if there is one
+			if (position > committedLength)
+				truncate(committedLength);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return numEntries;
+	}
+
+	/**
+	 * Cuts the journal off after the given number of bytes.
+	 */
+	private void truncate(long length) throws IOException {
+		FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE);
+		try {
+			channel.truncate(length);
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Applies one journal entry to the given database lines.
+	 *
+	 * @param databaseLines The lines of the database file.
+	 * @param entry         The journal entry in the form LineNum|Line.
+	 */
+	private void applyEntry(List<String> databaseLines, String entry) {
+		// the line number is everything before the first |
+		int separator = entry.indexOf('|');
+		int lineNum = Integer.parseInt(entry.substring(0, separator));
+
+		// add empty lines if the entry is past the end of the database
+		while (databaseLines.size() <= lineNum) {
+			databaseLines.add("");
+		}
+		databaseLines.set(lineNum, entry.substring(separator + 1));
+	}
+
+	/**
+	 * Appends a batch of changed lines to the journal.
+	 *
+	 * @param changedLines Map of line numbers to the new contents of those lines.
+	 * @param sync         True if the journal should be synced to disk before
+	 *                     returning.
+	 */
+	public void append(Map<Integer, String> changedLines, boolean sync) {
+		if (changedLines.isEmpty())
+			return;
+
+		try {
+			// Append to journal
+			FileOutputStream fos = new FileOutputStream(journalFile, true);
+			BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+
+			for (Map.Entry<Integer, String> entry : changedLines.entrySet()) {
+				bw.write(entry.getKey() + "|" + entry.getValue() + "\n");
+			}
+			bw.write(COMMIT + "\n");
+			bw.flush();
+			if (sync)
+				fos.getFD().sync();
+			bw.close();
+
+			numEntries += changedLines.size();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Erases the journal after its changes have been written to the database file.
+	 */
+	public void clear() {
+		journalFile.delete();
+		numEntries = 0;
+	}
+
+	/**
+	 * Gets the number of changed lines currently stored in the journal.
+	 *
+	 * @return The number of changed lines in the journal.
+	 */
+	public int size() {
+		return numEntries;
+	}
+}
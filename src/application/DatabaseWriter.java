@@ -0,0 +1,244 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Simulates a background thread that saves database changes, so the thread
+ * changing the database (for example the JavaFX Application Thread) does not
+ * wait for the disk. Changes handed to the writer are combined and written
+ * together, and synced to disk according to a durability policy.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class DatabaseWriter {
+
+	/**
+	 * When changes handed to the writer are written and synced to disk.
+	 */
+	public enum DurabilityPolicy {
+		/** Write and sync as soon as changes are handed to the writer. */
+		EVERY_WRITE,
+		/** Write and sync waiting changes at a fixed interval. */
+		INTERVAL,
+		/** Only write and sync when flush() or close() is called. */
+		ON_SHUTDOWN
+	}
+
+	private UserDb database;
+	private DurabilityPolicy policy;
+	private long intervalMillis;
+
+	// copy of the database lines as they are on disk, only used by the writer thread
+	private List<String> persistedLines;
+
+	private final Object lock = new Object();
+	private List<Map<Integer, String>> pending = new ArrayList<>(); // batches not yet written
+	private long numSubmitted; // number of batches handed to the writer
+	private long numWritten; // number of batches written and synced
+	private boolean flushRequested;
+	private boolean closed;
+	private Throwable failure; // why the writer stopped, null while it is writing
+	private Thread thread;
+
+	/**
+	 * Constructs and starts a writer for the given database.
+	 *
+	 * @param database       The database whose changes will be saved.
+	 * @param databaseLines  The lines of the database as they are on disk.
+	 * @param policy         When changes are written and synced to disk.
+	 * @param intervalMillis Milliseconds between writes for the INTERVAL policy.
+	 */
+	public DatabaseWriter(UserDb database, List<String> databaseLines, DurabilityPolicy policy, long intervalMillis) {
+		this.database = database;
+		this.policy = policy;
+		this.intervalMillis = intervalMillis;
+		persistedLines = new ArrayList<>(databaseLines);
+
+		thread = new Thread(this::run, "UserDb writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Hands a batch of changed lines to the writer. Returns without waiting for
+	 * the batch to be written.
+	 *
+	 * @param changedLines Map of line numbers to the new contents of those lines.
+	 * @throws IllegalStateException If the writer is closed, or stopped because
+	 *                               an earlier batch could not be written.
+	 */
+	public void submit(Map<Integer, String> changedLines) {
+		synchronized (lock) {
+			checkFailure();
+			if (closed)
+				throw new IllegalStateException("Writer is closed");
+
+			pending.add(changedLines);
+			numSubmitted++;
+			if (policy == DurabilityPolicy.EVERY_WRITE)
+				lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until every batch handed to the writer so far is written and synced to
+	 * disk.
+	 *
+	 * @throws IllegalStateException If a batch could not be written.
+	 */
+	public void flush() {
+		synchronized (lock) {
+			long target = numSubmitted;
+			flushRequested = true;
+			lock.notifyAll();
+
+			while (numWritten < target && thread.isAlive()) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			checkFailure();
+		}
+	}
+
+	/**
+	 * Replaces the writer's copy of the database lines after the database file was
+	 * rewritten by someone else, for example by compaction. Must only be called
+	 * right after flush().
+	 *
+	 * @param databaseLines The lines of the database as they are now on disk.
+	 */
+	public void reset(List<String> databaseLines) {
+		synchronized (lock) {
+			persistedLines = new ArrayList<>(databaseLines);
+		}
+	}
+
+	/**
+	 * Writes every waiting batch and stops the writer thread.
+	 *
+	 * @throws IllegalStateException If a batch could not be written.
+	 */
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (lock) {
+			checkFailure();
+		}
+	}
+
+	/**
+	 * Throws the reason the writer thread stopped, if it stopped because a batch
+	 * could not be written. Must be called while holding the lock.
+	 */
+	private void checkFailure() {
+		if (failure != null)
+			throw new IllegalStateException("Writer failed to save changes", failure);
+	}
+
+	/**
+	 * Writes batches until the writer is closed, or until a batch cannot be
+	 * written.
+	 */
+	private void run() {
+		long lastWrite = System.currentTimeMillis();
+
+		while (true) {
+			List<Map<Integer, String>> batches;
+			long target;
+			List<String> lines;
+
+			synchronized (lock) {
+				// wait until there is a reason to write
+				while (!readyToWrite(lastWrite)) {
+					try {
+						if (policy == DurabilityPolicy.INTERVAL && !pending.isEmpty())
+							lock.wait(Math.max(1, lastWrite + intervalMillis - System.currentTimeMillis()));
+						else
+							lock.wait();
+					} catch (InterruptedException e) {
+						closed = true;
+					}
+				}
+
+				batches = pending;
+				pending = new ArrayList<>();
+				target = numSubmitted;
+				flushRequested = false;
+				lines = persistedLines;
+			}
+
+			try {
+				// combine the batches so every changed line is written once
+				if (!batches.isEmpty()) {
+					Map<Integer, String> merged = new TreeMap<>();
+					for (Map<Integer, String> batch : batches) {
+						merged.putAll(batch);
+					}
+
+					for (Map.Entry<Integer, String> entry : merged.entrySet()) {
+						while (lines.size() <= entry.getKey()) {
+							lines.add("");
+						}
+						lines.set(entry.getKey(), entry.getValue());
+					}
+
+					database.persistChanges(lines, merged, true);
+				}
+			} catch (RuntimeException | Error e) {
+				// the copy of the lines no longer matches the disk, so stop writing and
+				// report the failure to whoever uses the writer next
+				synchronized (lock) {
+					failure = e;
+				}
+			} finally {
+				// wake threads waiting in flush() even if the batches were not written,
+				// so they see the failure instead of waiting forever
+				synchronized (lock) {
+					numWritten = target;
+					lock.notifyAll();
+				}
+			}
+			lastWrite = System.currentTimeMillis();
+
+			synchronized (lock) {
+				if (failure != null || (closed && pending.isEmpty()))
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Checks if the writer thread should write the waiting batches now.
+	 */
+	private boolean readyToWrite(long lastWrite) {
+		if (closed || flushRequested)
+			return true;
+		if (pending.isEmpty())
+			return false;
+
+		switch (policy) {
+		case EVERY_WRITE:
+			return true;
+		case INTERVAL:
+			return System.currentTimeMillis() >= lastWrite + intervalMillis;
+		default:
+			return false;
+		}
+	}
+}
@@ -0,0 +1,599 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Spreads exposure levels through the interaction records of the database one
+ * level at a time, so every record is visited at most once and all changes are
+ * written to the database together.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ExposurePropagator {
+	public static final int MAX_EXPOSURE_LEVEL = 3; // third degree
+
+	private UserDb database;
+	private PropagationStats totalStats = new PropagationStats();
+
+	// visitMarks[record] == visitNum if the record was reached by the current
+	// propagation, and levels[record] is then the level it was reached at
+	private int[] visitMarks = new int[0];
+	private int[] levels = new int[0];
+	private int visitNum;
+
+	// used instead of visitMarks and levels when frontiers are expanded on several
+	// threads, holding visitNum in the high half and the level in the low half
+	private AtomicLongArray atomicMarks;
+	private ForkJoinPool pool; // null if propagating on the calling thread only
+	private int parallelism = 1;
+
+	// smallest frontier that is split between threads
+	private static final int MIN_PARALLEL_FRONTIER = 1024;
+
+	// level of a record that no source reaches, higher than any real level
+	private static final int NO_LEVEL = Integer.MAX_VALUE - 1;
+
+	/**
+	 * Constructs an exposure propagator for the given database.
+	 *
+	 * @param database The database whose records will be updated.
+	 */
+	public ExposurePropagator(UserDb database) {
+		this.database = database;
+	}
+
+	/**
+	 * Updates the exposure status of the given record to exposureLevel and of
+	 * every record within MAX_EXPOSURE_LEVEL interactions of it to its distance
+	 * from the record plus exposureLevel. Exposure statuses are only ever made
+	 * more severe, and records of users who tested positive keep an empty status.
+	 *
+	 * @param userLineNum   The record line number where the propagation starts.
+	 * @param exposureLevel The exposure level of that record.
+	 * @return The number of records visited and changed.
+	 */
+	public PropagationStats propagate(int userLineNum, int exposureLevel) {
+		List<Integer> userLineNums = new ArrayList<>(1);
+		userLineNums.add(userLineNum);
+		return propagate(userLineNums, exposureLevel);
+	}
+
+	/**
+	 * Updates the exposure status of every given record to exposureLevel and of
+	 * every record within MAX_EXPOSURE_LEVEL interactions of any of them to its
+	 * distance from the closest one plus exposureLevel. All given records start at
+	 * the same level, so each record is visited once at the lowest level any of
+	 * them reaches it at, however many of them it is near.
+	 *
+	 * @param userLineNums  The record line numbers where the propagation starts.
+	 * @param exposureLevel The exposure level of those records.
+	 * @return The number of records visited and changed.
+	 */
+	public PropagationStats propagate(Collection<Integer> userLineNums, int exposureLevel) {
+		return search(userLineNums, exposureLevel, false);
+	}
+
+	/**
+	 * Updates the exposure status of the given record to exposureLevel, and keeps
+	 * going only through records whose exposure status that makes more severe.
+	 * Records that already have the same or a more severe status already passed
+	 * it on to their interactions, so the search stops there. This is the update
+	 * for a new interaction: its cost is proportional to the number of records
+	 * that actually change, not to the size of the neighbourhood.
+	 *
+	 * @param userLineNum   The record line number where the propagation starts.
+	 * @param exposureLevel The exposure level of that record.
+	 * @return The number of records visited and changed.
+	 */
+	public PropagationStats propagateImprovement(int userLineNum, int exposureLevel) {
+		List<Integer> userLineNums = new ArrayList<>(1);
+		userLineNums.add(userLineNum);
+		return search(userLineNums, exposureLevel, true);
+	}
+
+	/**
+	 * Recomputes exposure statuses after a user's positive result was withdrawn.
+	 * Only records within MAX_EXPOSURE_LEVEL interactions of the user whose
+	 * status could have come from the user are recomputed, along with the records
+	 * further away that a new interaction gave a level above MAX_EXPOSURE_LEVEL
+	 * from one of them. Those levels are never passed on by distance, so they are
+	 * cleared. Their new level is the
+	 * distance to the closest remaining source, found by starting from the
+	 * unaffected records around them. Raised and cleared statuses are written in
+	 * one batch. The user's test status must already be changed.
+	 *
+	 * @param userLineNum The record line number of the user whose positive result
+	 *                    was withdrawn.
+	 * @return The number of records visited and changed.
+	 */
+	public PropagationStats withdraw(int userLineNum) {
+		ContactGraph graph = database.getContactGraph();
+		long startTime = System.nanoTime();
+		startVisit(graph.numRecords());
+
+		// find every record within third degree of the user and its distance from them
+		IntList neighbours = new IntList();
+		IntList region = new IntList();
+		IntList frontier = new IntList();
+		claim(userLineNum / 6, 0);
+		frontier.add(userLineNum / 6);
+		addAll(region, frontier);
+		for (int level = 0; level < MAX_EXPOSURE_LEVEL && frontier.size() > 0; level++) {
+			IntList nextFrontier = new IntList();
+			expand(graph, frontier, 0, frontier.size(), level + 1, false, nextFrontier);
+			addAll(region, nextFrontier);
+			frontier = nextFrontier;
+		}
+
+		// a record's status could have come from the user if it is not more severe
+		// than its distance from them
+		Map<Integer, Integer> newLevels = new HashMap<>(); // affected record -> recomputed level
+		IntList affected = new IntList(); // affected records, closest to the user first
+		for (int i = 0; i < region.size(); i++) {
+			int record = region.get(i);
+			if (i == 0 || couldComeFrom(record, levelOf(record))) {
+				newLevels.put(record, NO_LEVEL);
+				affected.add(record);
+			}
+		}
+
+		// adding an interaction passes a level on even when it is above
+		// MAX_EXPOSURE_LEVEL, so such levels can sit further away than third degree.
+		// Follow them from the affected records, so they are cleared as well
+		for (int i = 0; i < affected.size(); i++) {
+			int record = affected.get(i);
+			neighbours.clear();
+			graph.copyNeighbours(record, neighbours);
+			for (int j = 0; j < neighbours.size(); j++) {
+				int neighbour = neighbours.get(j);
+				int distance = levelOf(record) + 1;
+				if (distance > MAX_EXPOSURE_LEVEL && storedLevel(neighbour) > MAX_EXPOSURE_LEVEL
+						&& couldComeFrom(neighbour, distance) && claim(neighbour, distance)) {
+					newLevels.put(neighbour, NO_LEVEL);
+					affected.add(neighbour);
+					region.add(neighbour);
+				}
+			}
+		}
+
+		// start from the levels passed on by unaffected interactions, which still
+		// hold
+		List<IntList> levelBuckets = new ArrayList<>();
+		for (int level = 0; level <= MAX_EXPOSURE_LEVEL; level++) {
+			levelBuckets.add(new IntList());
+		}
+		for (int record : newLevels.keySet()) {
+			neighbours.clear();
+			graph.copyNeighbours(record, neighbours);
+			for (int j = 0; j < neighbours.size(); j++) {
+				int neighbour = neighbours.get(j);
+				if (newLevels.containsKey(neighbour))
+					continue;
+
+				int passedOn = testedPositive(neighbour) ? 0 : storedLevel(neighbour);
+				if (passedOn < MAX_EXPOSURE_LEVEL && passedOn + 1 < newLevels.get(record))
+					newLevels.put(record, passedOn + 1);
+			}
+			if (newLevels.get(record) <= MAX_EXPOSURE_LEVEL)
+				levelBuckets.get(newLevels.get(record)).add(record);
+		}
+
+		// spread the levels through the affected records, lowest level first, so
+		// each record ends at its distance from the closest source
+		for (int level = 1; level < MAX_EXPOSURE_LEVEL; level++) {
+			IntList bucket = levelBuckets.get(level);
+			for (int i = 0; i < bucket.size(); i++) {
+				int record = bucket.get(i);
+				if (newLevels.get(record) != level)
+					continue;
+
+				neighbours.clear();
+				graph.copyNeighbours(record, neighbours);
+				for (int j = 0; j < neighbours.size(); j++) {
+					Integer current = newLevels.get(neighbours.get(j));
+					if (current != null && level + 1 < current) {
+						newLevels.put(neighbours.get(j), level + 1);
+						levelBuckets.get(level + 1).add(neighbours.get(j));
+					}
+				}
+			}
+		}
+
+		// write the recomputed levels, clearing the status of records no source
+		// reaches anymore
+		Map<Integer, Integer> changes = new HashMap<>();
+		for (Map.Entry<Integer, Integer> entry : newLevels.entrySet()) {
+			int level = entry.getValue();
+			changes.put(entry.getKey() * 6, level == NO_LEVEL ? 0 : level);
+		}
+
+		PropagationStats stats = new PropagationStats();
+		stats.searchNanos = System.nanoTime() - startTime;
+		stats.workerNanos = stats.searchNanos;
+		stats.nodesVisited = region.size();
+		stats.recordsChanged = database.replaceExposureStatuses(changes);
+		stats.numPropagations = 1;
+
+		totalStats.add(stats);
+		return stats;
+	}
+
+	/**
+	 * Checks if a record's exposure status could have come from a user at the
+	 * given distance: it has a status, it is not more severe than the distance,
+	 * and the record is not a source itself.
+	 */
+	private boolean couldComeFrom(int record, int distance) {
+		int level = storedLevel(record);
+		return level != NO_LEVEL && level >= distance && !testedPositive(record);
+	}
+
+	/**
+	 * Gets the exposure level stored in a record, or NO_LEVEL if it has none.
+	 */
+	private int storedLevel(int record) {
+		String exposureStat = database.readExposureStat(record * 6);
+		return exposureStat.equals("") ? NO_LEVEL : Integer.parseInt(exposureStat);
+	}
+
+	/**
+	 * Checks if a record belongs to a user who tested positive.
+	 */
+	private boolean testedPositive(int record) {
+		return database.readTestStatus(record * 6).equals("TESTED POSITIVE");
+	}
+
+	/**
+	 * Searches one level at a time from the given records and writes the levels
+	 * reached.
+	 *
+	 * @param userLineNums     The record line numbers where the search starts.
+	 * @param exposureLevel    The exposure level of those records.
+	 * @param onlyImprovements True if records whose exposure status would not
+	 *                         become more severe are not visited.
+	 * @return The number of records visited and changed.
+	 */
+	private PropagationStats search(Collection<Integer> userLineNums, int exposureLevel, boolean onlyImprovements) {
+		ContactGraph graph = database.getContactGraph();
+		startVisit(graph.numRecords());
+		PropagationStats stats = new PropagationStats();
+
+		// record numbers of every record reached, in the order they were reached
+		IntList visited = new IntList();
+
+		// records reached at the current level, starting with every given record
+		IntList frontier = new IntList();
+		for (int userLineNum : userLineNums) {
+			if ((!onlyImprovements || improves(userLineNum / 6, exposureLevel)) && claim(userLineNum / 6, exposureLevel))
+				frontier.add(userLineNum / 6);
+		}
+		addAll(visited, frontier);
+
+		// go one level further until the third degree is reached
+		for (int level = exposureLevel; level < MAX_EXPOSURE_LEVEL && frontier.size() > 0; level++) {
+			long startTime = System.nanoTime();
+			IntList nextFrontier;
+
+			// only split frontiers that are large enough to be worth the threads. Checking
+			// for improvements reads the database, so it stays on this thread
+			if (pool != null && !onlyImprovements && frontier.size() >= MIN_PARALLEL_FRONTIER) {
+				nextFrontier = expandInParallel(graph, frontier, level + 1, stats);
+				stats.searchNanos += System.nanoTime() - startTime;
+			} else {
+				nextFrontier = new IntList();
+				expand(graph, frontier, 0, frontier.size(), level + 1, onlyImprovements, nextFrontier);
+				long elapsed = System.nanoTime() - startTime;
+				stats.searchNanos += elapsed;
+				stats.workerNanos += elapsed;
+			}
+
+			addAll(visited, nextFrontier);
+			frontier = nextFrontier;
+		}
+
+		return apply(visited, stats);
+	}
+
+	/**
+	 * Reaches the interactions of part of a frontier at the given level, adding the
+	 * ones reached for the first time to the next frontier.
+	 */
+	private void expand(ContactGraph graph, IntList frontier, int from, int to, int nextLevel,
+			boolean onlyImprovements, IntList nextFrontier) {
+		IntList neighbours = new IntList();
+		for (int i = from; i < to; i++) {
+			neighbours.clear();
+			graph.copyNeighbours(frontier.get(i), neighbours);
+
+			for (int j = 0; j < neighbours.size(); j++) {
+				int neighbour = neighbours.get(j);
+				if (onlyImprovements && !improves(neighbour, nextLevel))
+					continue;
+				if (claim(neighbour, nextLevel))
+					nextFrontier.add(neighbour);
+			}
+		}
+	}
+
+	/**
+	 * Checks if reaching a record at the given level would make its exposure
+	 * status more severe. Records of users who tested positive have an empty
+	 * status, so they are always passed through, like in a full propagation.
+	 */
+	private boolean improves(int record, int level) {
+		String exposureStat = database.readExposureStat(record * 6);
+		return exposureStat.equals("") || level < Integer.parseInt(exposureStat);
+	}
+
+	/**
+	 * Splits a frontier into chunks that are expanded at the same time on the
+	 * pool. The next frontiers of the chunks are joined in chunk order.
+	 */
+	private IntList expandInParallel(ContactGraph graph, IntList frontier, int nextLevel, PropagationStats stats) {
+		int numChunks = Math.min(parallelism * 4, (frontier.size() + MIN_PARALLEL_FRONTIER - 1) / MIN_PARALLEL_FRONTIER);
+		int chunkSize = (frontier.size() + numChunks - 1) / numChunks;
+		AtomicLong workerNanos = new AtomicLong();
+
+		List<Callable<IntList>> tasks = new ArrayList<>(numChunks);
+		for (int from = 0; from < frontier.size(); from += chunkSize) {
+			int chunkStart = from;
+			int chunkEnd = Math.min(frontier.size(), from + chunkSize);
+			tasks.add(() -> {
+				long startTime = System.nanoTime();
+				IntList nextFrontier = new IntList();
+				expand(graph, frontier, chunkStart, chunkEnd, nextLevel, false, nextFrontier);
+				workerNanos.addAndGet(System.nanoTime() - startTime);
+				return nextFrontier;
+			});
+		}
+
+		IntList nextFrontier = new IntList();
+		try {
+			for (Future<IntList> chunk : pool.invokeAll(tasks)) {
+				addAll(nextFrontier, chunk.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while propagating exposure", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Could not propagate exposure", e.getCause());
+		}
+
+		stats.workerNanos += workerNanos.get();
+		return nextFrontier;
+	}
+
+	/**
+	 * Adds every value of one list to the end of another.
+	 */
+	private static void addAll(IntList to, IntList from) {
+		for (int i = 0; i < from.size(); i++) {
+			to.add(from.get(i));
+		}
+	}
+
+	/**
+	 * Sets how many threads expand each level of a propagation. With more than one
+	 * thread, large frontiers are split into chunks that are expanded at the same
+	 * time, and records are claimed with an atomic compare-and-set so each one is
+	 * still reached once, at its lowest level. The results are the same as with
+	 * one thread.
+	 *
+	 * @param parallelism The number of threads, 1 to propagate on the calling
+	 *                    thread only.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+
+		if (pool != null)
+			pool.shutdown();
+		this.parallelism = parallelism;
+
+		if (parallelism == 1) {
+			pool = null;
+			atomicMarks = null;
+		} else {
+			pool = new ForkJoinPool(parallelism);
+			atomicMarks = new AtomicLongArray(visitMarks.length);
+		}
+	}
+
+	/**
+	 * Gets how many threads expand each level of a propagation.
+	 *
+	 * @return The number of threads.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Prepares the visit marks for a new propagation over the given number of
+	 * records. Marks from earlier propagations are ignored by changing visitNum
+	 * instead of clearing the arrays.
+	 */
+	private void startVisit(int numRecords) {
+		if (visitMarks.length < numRecords) {
+			visitMarks = new int[numRecords + numRecords / 2];
+			levels = new int[visitMarks.length];
+			if (atomicMarks != null)
+				atomicMarks = new AtomicLongArray(visitMarks.length);
+			visitNum = 0;
+		}
+		visitNum++;
+	}
+
+	/**
+	 * Marks a record as reached at the given level, unless the current
+	 * propagation already reached it at the same or a lower level.
+	 *
+	 * @return True if this is the first time the current propagation reached the
+	 *         record.
+	 */
+	private boolean claim(int record, int level) {
+		if (atomicMarks == null) {
+			if (visitMarks[record] == visitNum)
+				return false;
+			visitMarks[record] = visitNum;
+			levels[record] = level;
+			return true;
+		}
+
+		// the visit number is kept in the high half and the level in the low half, so
+		// both change together
+		long visitStamp = (long) visitNum << 32;
+		while (true) {
+			long current = atomicMarks.get(record);
+			boolean reached = (current & 0xFFFFFFFF00000000L) == visitStamp;
+			if (reached && (int) current <= level)
+				return false;
+			if (atomicMarks.compareAndSet(record, current, visitStamp | level))
+				return !reached;
+		}
+	}
+
+	/**
+	 * Gets the level a record was reached at by the current propagation.
+	 */
+	private int levelOf(int record) {
+		return atomicMarks == null ? levels[record] : (int) atomicMarks.get(record);
+	}
+
+	/**
+	 * Writes the computed exposure levels into the database in one batch.
+	 *
+	 * @param visited The record numbers of every record reached.
+	 * @param stats   The timings of the propagation, completed with the counts.
+	 * @return The number of records visited and changed.
+	 */
+	private PropagationStats apply(IntList visited, PropagationStats stats) {
+		Map<Integer, Integer> changes = new HashMap<>();
+
+		// users who tested positive keep their own status
+		for (int i = 0; i < visited.size(); i++) {
+			int lineNum = visited.get(i) * 6;
+			if (!database.readTestStatus(lineNum).equals("TESTED POSITIVE"))
+				changes.put(lineNum, levelOf(visited.get(i)));
+		}
+
+		stats.nodesVisited = visited.size();
+		stats.recordsChanged = database.writeExposureStatuses(changes);
+		stats.numPropagations = 1;
+
+		totalStats.add(stats);
+		return stats;
+	}
+
+	/**
+	 * Gets the number of records visited and changed by every propagation so far.
+	 *
+	 * @return The totals of all propagations.
+	 */
+	public PropagationStats getTotalStats() {
+		return totalStats;
+	}
+
+	/**
+	 * Stores the cost of one or more exposure propagations.
+	 */
+	public static class PropagationStats {
+		long nodesVisited; // records reached by the propagation
+		long recordsChanged; // records whose exposure status changed
+		long numPropagations; // propagations counted in these stats
+		long searchNanos; // time spent expanding frontiers
+		long workerNanos; // time spent expanding frontiers, added up over every thread
+
+		/**
+		 * Gets the number of records reached by the propagation.
+		 *
+		 * @return The number of records visited.
+		 */
+		public long getNodesVisited() {
+			return nodesVisited;
+		}
+
+		/**
+		 * Gets the number of records whose exposure status changed.
+		 *
+		 * @return The number of records changed.
+		 */
+		public long getRecordsChanged() {
+			return recordsChanged;
+		}
+
+		/**
+		 * Gets the number of propagations counted in these stats.
+		 *
+		 * @return The number of propagations.
+		 */
+		public long getNumPropagations() {
+			return numPropagations;
+		}
+
+		/**
+		 * Gets the time spent expanding frontiers.
+		 *
+		 * @return The elapsed time in nanoseconds.
+		 */
+		public long getSearchNanos() {
+			return searchNanos;
+		}
+
+		/**
+		 * Gets the time spent expanding frontiers, added up over every thread that
+		 * worked on them.
+		 *
+		 * @return The total thread time in nanoseconds.
+		 */
+		public long getWorkerNanos() {
+			return workerNanos;
+		}
+
+		/**
+		 * Gets how many threads were busy on average while frontiers were expanded,
+		 * which is the speedup over expanding them on one thread.
+		 *
+		 * @return The thread time divided by the elapsed time, 1 for a propagation
+		 *         on the calling thread.
+		 */
+		public double getSpeedup() {
+			return searchNanos == 0 ? 1 : (double) workerNanos / searchNanos;
+		}
+
+		/**
+		 * Adds the counts of another propagation to these stats.
+		 *
+		 * @param other The stats of the other propagation.
+		 */
+		void add(PropagationStats other) {
+			nodesVisited += other.nodesVisited;
+			recordsChanged += other.recordsChanged;
+			numPropagations += other.numPropagations;
+			searchNanos += other.searchNanos;
+			workerNanos += other.workerNanos;
+		}
+
+		/**
+		 * Returns the stats as a string
+		 */
+		@Override
+		public String toString() {
+			return "propagations=" + numPropagations + " visited=" + nodesVisited + " changed=" + recordsChanged
+					+ String.format(" speedup=%.2f", getSpeedup());
+		}
+	}
+}
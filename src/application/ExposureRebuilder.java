@@ -0,0 +1,425 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Recomputes the exposure status of every record from scratch and corrects the
+ * ones that disagree with the contact graph. Statuses written by older versions
+ * of the propagation, or by merges of records, can be more or less severe than
+ * the distance to the closest user who tested positive. The rebuild copies the
+ * contact graph and reads every record, searches the copy from all users who
+ * tested positive at once on several threads, and only writes the records whose
+ * status is wrong. The database is only held while it is copied and while each
+ * small batch of corrections is written, so other sessions go on during the
+ * search.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ExposureRebuilder {
+	private static final int DEFAULT_BATCH_SIZE = 1000; // corrections written per save
+	private static final int MIN_CHUNK_SIZE = 1024; // fewest records or frontier entries per task
+
+	// level of a record that no user who tested positive reaches
+	private static final int NO_LEVEL = Integer.MAX_VALUE;
+
+	// level of a cleared record, which is never corrected
+	private static final int CLEARED = -1;
+
+	private UserDb database;
+	private ForkJoinPool pool;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Constructs a rebuilder for the given database that uses the common ForkJoin
+	 * pool.
+	 *
+	 * @param database The database whose records will be corrected.
+	 */
+	public ExposureRebuilder(UserDb database) {
+		this(database, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs a rebuilder for the given database that reads and searches on the
+	 * given pool.
+	 *
+	 * @param database The database whose records will be corrected.
+	 * @param pool     The pool the records are read and searched on.
+	 */
+	public ExposureRebuilder(UserDb database, ForkJoinPool pool) {
+		this.database = database;
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets how many corrections are written and saved together.
+	 *
+	 * @param batchSize The number of records corrected in one save.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Recomputes the exposure status of every record and writes the ones that
+	 * changed. A record's correct status is its distance to the closest user who
+	 * tested positive, if that is at most MAX_EXPOSURE_LEVEL interactions, and
+	 * empty otherwise. Users who tested positive have an empty status themselves.
+	 * A record whose status or test status is changed by someone else while the
+	 * rebuild runs is left to that change.
+	 *
+	 * @return The number of records checked and corrected.
+	 */
+	public RebuildReport rebuild() {
+		long startTime = System.nanoTime();
+		RecordLocks locks = database.getLocks();
+		RebuildReport report = new RebuildReport();
+
+		// copy the graph and read the stored status of every record while records are
+		// neither added, merged nor changed, so the search sees one consistent
+		// database without holding it. Reads by other sessions go on meanwhile
+		ContactGraph databaseGraph;
+		ContactGraph graph;
+		int[] storedLevels;
+		int[] levels;
+		locks.lockShared();
+		locks.lockWriter();
+		try {
+			databaseGraph = database.getContactGraph();
+			graph = databaseGraph.snapshot();
+			storedLevels = new int[graph.numRecords()];
+			levels = new int[graph.numRecords()];
+
+			// the records cannot change while this thread holds the writer lock, so the
+			// pool threads read them without the record locks
+			runInChunks(storedLevels.length, (from, to) -> {
+				readRecords(from, to, storedLevels, levels);
+				return null;
+			});
+		} finally {
+			locks.unlockWriter();
+			locks.unlockShared();
+		}
+		int numRecords = graph.numRecords();
+
+		// start the search from every user who tested positive
+		AtomicIntegerArray reached = new AtomicIntegerArray(levels);
+		IntList frontier = new IntList();
+		for (int record = 0; record < numRecords; record++) {
+			if (levels[record] == 0)
+				frontier.add(record);
+		}
+		report.numSources = frontier.size();
+
+		// go one level further from all of them at once until the third degree is
+		// reached
+		for (int level = 1; level <= ExposurePropagator.MAX_EXPOSURE_LEVEL && frontier.size() > 0; level++) {
+			frontier = expand(graph, frontier, level, reached);
+		}
+
+		// compare the computed levels with the stored ones
+		IntList corrected = new IntList();
+		IntList correctLevels = new IntList();
+		for (int record = 0; record < numRecords; record++) {
+			int level = reached.get(record);
+			if (level == CLEARED)
+				continue;
+			report.numChecked++;
+
+			int correctLevel = level == 0 || level == NO_LEVEL ? 0 : level;
+			if (correctLevel == storedLevels[record])
+				continue;
+
+			if (correctLevel == 0)
+				report.numCleared++;
+			else if (storedLevels[record] == 0 || correctLevel < storedLevels[record])
+				report.numMoreSevere++;
+			else
+				report.numLessSevere++;
+			corrected.add(record);
+			correctLevels.add(correctLevel);
+		}
+		report.searchNanos = System.nanoTime() - startTime;
+
+		// write the corrections a batch at a time
+		for (int from = 0; from < corrected.size(); from += batchSize) {
+			// only one session changes records at a time and records are not merged
+			// meanwhile, so no record changes between checking it and correcting it
+			int to = Math.min(corrected.size(), from + batchSize);
+			Map<Integer, Integer> changes = new HashMap<>();
+			locks.lockShared();
+			locks.lockWriter();
+			try {
+				// if the database was compacted or rolled back since it was copied, the
+				// records have moved and the remaining corrections no longer apply
+				if (database.getContactGraph() != databaseGraph) {
+					report.numSkipped += corrected.size() - from;
+					break;
+				}
+
+				for (int i = from; i < to; i++) {
+					int record = corrected.get(i);
+
+					// skip records that changed since they were read. Changes to the graph
+					// meanwhile write the statuses they affect, so those records are
+					// skipped as well
+					if (changedSinceRead(record, storedLevels[record], levels[record] == 0)) {
+						report.numSkipped++;
+						continue;
+					}
+					changes.put(record * 6, correctLevels.get(i));
+				}
+				report.numWritten += database.replaceExposureStatuses(changes);
+			} finally {
+				locks.unlockWriter();
+				locks.unlockShared();
+			}
+			report.numBatches++;
+		}
+
+		report.totalNanos = System.nanoTime() - startTime;
+		return report;
+	}
+
+	/**
+	 * Reads the stored exposure level of part of the records, and gives the users
+	 * who tested positive level 0 and everyone else NO_LEVEL.
+	 */
+	private void readRecords(int from, int to, int[] storedLevels, int[] levels) {
+		for (int record = from; record < to; record++) {
+			if (database.isRecordCleared(record * 6)) {
+				levels[record] = CLEARED;
+				continue;
+			}
+
+			storedLevels[record] = readLevel(record);
+			levels[record] = database.readTestStatus(record * 6).equals("TESTED POSITIVE") ? 0 : NO_LEVEL;
+		}
+	}
+
+	/**
+	 * Checks if a record was cleared, or its test status or exposure status
+	 * changed, since the database was copied.
+	 */
+	private boolean changedSinceRead(int record, int storedLevel, boolean wasPositive) {
+		if (database.isRecordCleared(record * 6))
+			return true;
+		boolean positive = database.readTestStatus(record * 6).equals("TESTED POSITIVE");
+		return positive != wasPositive || readLevel(record) != storedLevel;
+	}
+
+	/**
+	 * Gets the exposure level stored in a record, 0 if it has none.
+	 */
+	private int readLevel(int record) {
+		String exposureStat = database.readExposureStat(record * 6);
+		return exposureStat.equals("") ? 0 : Integer.parseInt(exposureStat);
+	}
+
+	/**
+	 * Reaches the interactions of every record in the frontier at the given level.
+	 * Records are claimed with an atomic compare-and-set, so each one is reached
+	 * once even when chunks of the frontier are expanded at the same time.
+	 *
+	 * @return The records reached for the first time.
+	 */
+	private IntList expand(ContactGraph graph, IntList frontier, int level, AtomicIntegerArray reached) {
+		List<IntList> chunks = runInChunks(frontier.size(), (from, to) -> {
+			IntList nextFrontier = new IntList();
+			IntList neighbours = new IntList();
+			for (int i = from; i < to; i++) {
+				neighbours.clear();
+				graph.copyNeighbours(frontier.get(i), neighbours);
+				for (int j = 0; j < neighbours.size(); j++) {
+					// records added since the rebuild started are not searched
+					int neighbour = neighbours.get(j);
+					if (neighbour < reached.length() && reached.compareAndSet(neighbour, NO_LEVEL, level))
+						nextFrontier.add(neighbour);
+				}
+			}
+			return nextFrontier;
+		});
+
+		// join the next frontiers of the chunks in chunk order
+		IntList nextFrontier = new IntList();
+		for (IntList chunk : chunks) {
+			for (int i = 0; i < chunk.size(); i++) {
+				nextFrontier.add(chunk.get(i));
+			}
+		}
+		return nextFrontier;
+	}
+
+	/**
+	 * Does work on part of a range of records or frontier entries.
+	 */
+	private interface ChunkTask<T> {
+		/**
+		 * Does the work on the entries from from (inclusive) to to (exclusive).
+		 */
+		T run(int from, int to);
+	}
+
+	/**
+	 * Does work on a range of records or frontier entries on the pool, about 4
+	 * chunks per thread, and returns the results in chunk order.
+	 */
+	private <T> List<T> runInChunks(int size, ChunkTask<T> task) {
+		int numChunks = Math.max(1, Math.min(pool.getParallelism() * 4, size / MIN_CHUNK_SIZE));
+		int chunkSize = (size + numChunks - 1) / numChunks;
+
+		List<Callable<T>> tasks = new ArrayList<>(numChunks);
+		for (int from = 0; from < size; from += chunkSize) {
+			int chunkStart = from;
+			int chunkEnd = Math.min(size, from + chunkSize);
+			tasks.add(() -> task.run(chunkStart, chunkEnd));
+		}
+
+		List<T> results = new ArrayList<>(tasks.size());
+		try {
+			for (Future<T> chunk : pool.invokeAll(tasks)) {
+				results.add(chunk.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while rebuilding exposure statuses", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Could not rebuild exposure statuses", e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * Stores how many records a rebuild checked and corrected.
+	 */
+	public static class RebuildReport {
+		long numChecked; // records that are not cleared
+		long numSources; // users who tested positive
+		long numMoreSevere; // statuses that were missing or less severe than they should be
+		long numLessSevere; // statuses that were more severe than they should be
+		long numCleared; // statuses that should have been empty
+		long numSkipped; // corrections dropped because the record changed meanwhile
+		long numWritten; // records whose status was actually changed
+		long numBatches; // saves made while writing the corrections
+		long searchNanos; // time spent reading records and searching
+		long totalNanos; // time spent on the whole rebuild
+
+		/**
+		 * Gets the number of records checked.
+		 *
+		 * @return The number of records that are not cleared.
+		 */
+		public long getNumChecked() {
+			return numChecked;
+		}
+
+		/**
+		 * Gets the number of users who tested positive, where the search started.
+		 *
+		 * @return The number of users who tested positive.
+		 */
+		public long getNumSources() {
+			return numSources;
+		}
+
+		/**
+		 * Gets the number of statuses that were missing or less severe than the
+		 * distance to the closest user who tested positive.
+		 *
+		 * @return The number of statuses made more severe.
+		 */
+		public long getNumMoreSevere() {
+			return numMoreSevere;
+		}
+
+		/**
+		 * Gets the number of statuses that were more severe than the distance to
+		 * the closest user who tested positive.
+		 *
+		 * @return The number of statuses made less severe.
+		 */
+		public long getNumLessSevere() {
+			return numLessSevere;
+		}
+
+		/**
+		 * Gets the number of statuses of records that no user who tested positive
+		 * reaches, or of users who tested positive themselves, that were not empty.
+		 *
+		 * @return The number of statuses cleared.
+		 */
+		public long getNumCleared() {
+			return numCleared;
+		}
+
+		/**
+		 * Gets the number of corrections that were not written because the record
+		 * changed while the rebuild ran.
+		 *
+		 * @return The number of corrections skipped.
+		 */
+		public long getNumSkipped() {
+			return numSkipped;
+		}
+
+		/**
+		 * Gets the number of records whose status was changed.
+		 *
+		 * @return The number of records written.
+		 */
+		public long getNumWritten() {
+			return numWritten;
+		}
+
+		/**
+		 * Gets the number of saves made while writing the corrections.
+		 *
+		 * @return The number of batches.
+		 */
+		public long getNumBatches() {
+			return numBatches;
+		}
+
+		/**
+		 * Gets the time spent reading the records and searching from the users who
+		 * tested positive.
+		 *
+		 * @return The elapsed time in nanoseconds.
+		 */
+		public long getSearchNanos() {
+			return searchNanos;
+		}
+
+		/**
+		 * Gets the time spent on the whole rebuild, including writing.
+		 *
+		 * @return The elapsed time in nanoseconds.
+		 */
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		/**
+		 * Returns the report as a string
+		 */
+		@Override
+		public String toString() {
+			return "checked=" + numChecked + " sources=" + numSources + " moreSevere=" + numMoreSevere
+					+ " lessSevere=" + numLessSevere + " cleared=" + numCleared + " skipped=" + numSkipped
+					+ " written=" + numWritten + " batches=" + numBatches;
+		}
+	}
+}
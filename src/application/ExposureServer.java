@@ -0,0 +1,416 @@
+package application;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Regulates the HTTP API of the program, so other systems can use the exposure
+ * tracker without the GUI. It runs on the HTTP server built into the JDK and
+ * needs no JavaFX. Every endpoint takes a user's name, street, city, state and
+ * zip, as a JSON object in the request body or, for the endpoints that only
+ * read, as query parameters, and answers with JSON:
+ * <ul>
+ * <li>POST /users/register also takes testStatus and interactions, and
+ * registers the user.</li>
+ * <li>GET or POST /users/login checks if the user is registered.</li>
+ * <li>POST /users/test-status takes a status and updates the user's test
+ * status.</li>
+ * <li>POST /users/interactions takes interactions, a list of names, and adds
+ * them to the user.</li>
+ * <li>GET or POST /users/status gets the user's test status, exposure status
+ * and interactions.</li>
+ * </ul>
+ * Each request runs on its own virtual thread when the JDK has them, and on a
+ * pooled thread otherwise. All requests share one tracker, whose locks let
+ * reads of different users run at the same time.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ExposureServer {
+	private static final int DEFAULT_PORT = 8080;
+	private static final String DEFAULT_DATABASE = "FileDatabase.txt";
+	private static final int CONNECTION_BACKLOG = 4096; // connections waiting to be accepted
+	private static final int MAX_BODY_BYTES = 64 * 1024; // longest request body accepted
+	private static final String[] TEST_STATUSES = { "NOT TESTED", "TESTED NEGATIVE", "TESTED POSITIVE" };
+
+	private ExposureTracker expTracker;
+	private HttpServer server;
+	private ExecutorService executor;
+	private Object registrationLock = new Object(); // keeps two registrations of one user apart
+
+	/**
+	 * Constructs a server for the given tracker. The server does not accept
+	 * requests until start() is called.
+	 *
+	 * @param expTracker The tracker every request uses.
+	 * @param port       The port to listen on, or 0 for any free port.
+	 * @throws IOException If the port cannot be opened.
+	 */
+	public ExposureServer(ExposureTracker expTracker, int port) throws IOException {
+		this.expTracker = expTracker;
+		server = HttpServer.create(new InetSocketAddress(port), CONNECTION_BACKLOG);
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+
+		server.createContext("/users/register", exchange -> handle(exchange, true, this::register));
+		server.createContext("/users/login", exchange -> handle(exchange, false, this::login));
+		server.createContext("/users/test-status", exchange -> handle(exchange, true, this::updateTestStatus));
+		server.createContext("/users/interactions", exchange -> handle(exchange, true, this::addInteractions));
+		server.createContext("/users/status", exchange -> handle(exchange, false, this::checkStatus));
+	}
+
+	/**
+	 * Starts the server from the command line, without the GUI.
+	 *
+	 * @param args The port to listen on and the database file, both optional.
+	 */
+	public static void main(String[] args) {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		String databasePath = args.length > 1 ? args[1] : DEFAULT_DATABASE;
+
+		// journal changes and save them on a background thread, like the GUI does
+		UserDb database = new UserDb(databasePath, true);
+		database.enableAsyncWrites(DatabaseWriter.DurabilityPolicy.INTERVAL, 1000);
+		ExposureTracker expTracker = new ExposureTracker(database);
+
+		try {
+			ExposureServer server = new ExposureServer(expTracker, port);
+
+			// write journaled changes into the database file when the server is stopped
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				server.stop();
+				expTracker.close();
+			}));
+
+			server.start();
+			System.out.println("Exposure tracker API listening on port " + server.getPort());
+		} catch (IOException e) {
+			e.printStackTrace();
+			expTracker.close();
+		}
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waits up to a second for the running ones to
+	 * finish and stops the request threads. The tracker is left open.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * Gets the port the server listens on.
+	 *
+	 * @return The port number.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Creates the executor requests run on: a new virtual thread per request if
+	 * the JDK has virtual threads, so thousands of waiting requests cost little
+	 * memory, or a pool that grows with the number of requests otherwise. The
+	 * virtual thread executor is looked up by name, so the program still runs on
+	 * JDKs without it.
+	 *
+	 * @return The executor for requests.
+	 */
+	public static ExecutorService newRequestExecutor() {
+		try {
+			Method newVirtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) newVirtualExecutor.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// this JDK has no virtual threads
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Answers one request of an endpoint.
+	 */
+	private interface Endpoint {
+		/**
+		 * Answers a request.
+		 *
+		 * @param fields The fields of the request.
+		 * @return The response to be sent.
+		 */
+		Response answer(Map<String, String> fields);
+	}
+
+	/**
+	 * Stores the HTTP status code and JSON body of a response.
+	 */
+	private static class Response {
+		private int statusCode;
+		private JsonFields body;
+
+		private Response(int statusCode, JsonFields body) {
+			this.statusCode = statusCode;
+			this.body = body;
+		}
+
+		private static Response error(int statusCode, String message) {
+			return new Response(statusCode, new JsonFields().add("error", message));
+		}
+	}
+
+	/**
+	 * Reads the fields of a request, lets the endpoint answer it and sends the
+	 * response. Mistakes in the request are answered with 400 and anything else
+	 * that goes wrong with 500.
+	 *
+	 * @param exchange The request and its response.
+	 * @param changes  True if the endpoint changes the database, so it only
+	 *                 accepts POST.
+	 * @param endpoint The endpoint that answers the request.
+	 */
+	private void handle(HttpExchange exchange, boolean changes, Endpoint endpoint) throws IOException {
+		Response response;
+		try {
+			String method = exchange.getRequestMethod();
+			if (method.equals("POST")) {
+				response = endpoint.answer(JsonFields.parse(readBody(exchange)));
+			} else if (method.equals("GET") && !changes) {
+				response = endpoint.answer(parseQuery(exchange.getRequestURI().getRawQuery()));
+			} else {
+				exchange.getResponseHeaders().set("Allow", changes ? "POST" : "GET, POST");
+				response = Response.error(405, "Method " + method + " is not allowed");
+			}
+		} catch (IllegalArgumentException e) {
+			response = Response.error(400, e.getMessage());
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			response = Response.error(500, "The request could not be completed");
+		}
+		send(exchange, response);
+	}
+
+	/**
+	 * Registers a user with their test status and interactions.
+	 */
+	private Response register(Map<String, String> fields) {
+		User user = readUser(fields);
+		String testStatus = readTestStatus(fields, "testStatus");
+		String interactions = checkStoredText("interactions", fields.getOrDefault("interactions", "")).toUpperCase();
+
+		// checking and registering at once keeps two requests from registering the
+		// same user twice
+		synchronized (registrationLock) {
+			if (expTracker.userAlrRegistered(user))
+				return Response.error(409, "The user is already registered");
+			expTracker.registerNewUser(user, testStatus, interactions);
+		}
+		return new Response(201, status(user));
+	}
+
+	/**
+	 * Checks if a user is registered.
+	 */
+	private Response login(Map<String, String> fields) {
+		User user = readUser(fields);
+		boolean registered = expTracker.loginUser(user);
+		return new Response(registered ? 200 : 404, new JsonFields().add("registered", registered));
+	}
+
+	/**
+	 * Updates a registered user's test status.
+	 */
+	private Response updateTestStatus(Map<String, String> fields) {
+		User user = readUser(fields);
+		String status = readTestStatus(fields, "status");
+		if (!expTracker.loginUser(user))
+			return notRegistered();
+
+		expTracker.updateTestStatus(user, status);
+		return new Response(200, status(user));
+	}
+
+	/**
+	 * Adds interactions to a registered user. The interactions are a comma
+	 * separated list of names, and all of them are added together.
+	 */
+	private Response addInteractions(Map<String, String> fields) {
+		User user = readUser(fields);
+		List<String> interactions = readNames(fields, "interactions");
+		if (!expTracker.loginUser(user))
+			return notRegistered();
+
+		expTracker.addInteractions(user, interactions);
+		return new Response(200, status(user));
+	}
+
+	/**
+	 * Gets a registered user's test status, exposure status and interactions.
+	 */
+	private Response checkStatus(Map<String, String> fields) {
+		User user = readUser(fields);
+		if (!expTracker.loginUser(user))
+			return notRegistered();
+		return new Response(200, status(user));
+	}
+
+	private static Response notRegistered() {
+		return Response.error(404, "The user is not registered");
+	}
+
+	/**
+	 * Describes a user's test status, exposure status and interactions.
+	 */
+	private JsonFields status(User user) {
+		return new JsonFields().add("name", user.getName()).add("testStatus", expTracker.getTestStatus(user))
+				.add("exposureStatus", expTracker.getExposureStatus(user))
+				.add("interactions", expTracker.getUserInteractions(user));
+	}
+
+	/**
+	 * Reads the user a request is about, checking the fields the same way the GUI
+	 * checks its text fields.
+	 */
+	private static User readUser(Map<String, String> fields) {
+		String name = readField(fields, "name");
+		String street = readField(fields, "street");
+		String city = readField(fields, "city");
+		String state = readField(fields, "state");
+		String zip = readField(fields, "zip");
+
+		if (!User.validName(name))
+			throw new IllegalArgumentException("Name must be a first and last name separated by a space");
+		if (!zip.matches("[0-9]{5}"))
+			throw new IllegalArgumentException("Zip code must be 5 digits");
+		if (!state.matches("[a-zA-Z]{2}"))
+			throw new IllegalArgumentException("State must be a 2 letter abbreviation");
+		if (!street.matches("[0-9]+ +\\S.*"))
+			throw new IllegalArgumentException("Street must be a number followed by a street name");
+
+		return new User(name, street, city, state, Integer.parseInt(zip));
+	}
+
+	/**
+	 * Reads a comma separated list of names, checking each name the same way the
+	 * GUI checks the name of an interaction.
+	 */
+	private static List<String> readNames(Map<String, String> fields, String fieldName) {
+		List<String> names = new ArrayList<>();
+		for (String name : FieldTokenizer.split(readField(fields, fieldName), ',')) {
+			name = name.trim();
+			if (!User.validName(name))
+				throw new IllegalArgumentException(fieldName + " must be first and last names separated by commas");
+			names.add(name.toUpperCase());
+		}
+		return names;
+	}
+
+	/**
+	 * Reads a test status, in any case, and checks that it is one the GUI offers.
+	 */
+	private static String readTestStatus(Map<String, String> fields, String fieldName) {
+		String status = readField(fields, fieldName).trim().toUpperCase();
+		for (String testStatus : TEST_STATUSES) {
+			if (testStatus.equals(status))
+				return status;
+		}
+		throw new IllegalArgumentException(fieldName + " must be one of " + String.join(", ", TEST_STATUSES));
+	}
+
+	/**
+	 * Reads a field that must be in the request.
+	 */
+	private static String readField(Map<String, String> fields, String fieldName) {
+		String value = fields.get(fieldName);
+		if (value == null || value.trim().isEmpty())
+			throw new IllegalArgumentException("Missing field: " + fieldName);
+		return checkStoredText(fieldName, value).trim();
+	}
+
+	/**
+	 * Checks that a field can be written to the database as it is. A | or line
+	 * break would split the field when the database is read, so a request with
+	 * one is rejected instead of stored.
+	 */
+	private static String checkStoredText(String fieldName, String value) {
+		if (value.indexOf('|') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)
+			throw new IllegalArgumentException(fieldName + " must not contain | or line breaks");
+		return value;
+	}
+
+	/**
+	 * Reads the body of a request as UTF-8 text.
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = exchange.getRequestBody()) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+				if (body.size() > MAX_BODY_BYTES)
+					throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Splits a query string into its decoded parameters.
+	 */
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> fields = new LinkedHashMap<>();
+		if (query == null)
+			return fields;
+
+		try {
+			for (String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				if (equals < 0)
+					fields.put(URLDecoder.decode(parameter, "UTF-8"), "");
+				else
+					fields.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			// every JDK supports UTF-8
+			e.printStackTrace();
+		}
+		return fields;
+	}
+
+	/**
+	 * Sends a response as UTF-8 JSON and closes the exchange.
+	 */
+	private static void send(HttpExchange exchange, Response response) throws IOException {
+		byte[] body = response.body.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(response.statusCode, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+		exchange.close();
+	}
+}
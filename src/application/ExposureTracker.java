@@ -1,6 +1,10 @@
 package application;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Performs the main business rules processing, responds to the user's
@@ -12,6 +16,12 @@ import java.util.ArrayList;
 public class ExposureTracker {
 
 	private UserDb database;
+	private ExposurePropagator propagator;
+	private RecordLocks locks; // shared with the database, see RecordLocks
+	private boolean fuzzyNameMatching = true; // link misspelled interaction names to existing records
+
+	// word form of every exposure level, by level
+	private static final String[] EXPOSURE_WORDS = { "", "FIRST-DEGREE", "SECOND-DEGREE", "THIRD-DEGREE" };
 
 	/**
 	 * Constructs an exposure tracker with a given database file path
@@ -19,7 +29,25 @@ public class ExposureTracker {
 	 * @param databaseFilePath The file path to the database text file.
 	 */
 	public ExposureTracker(String databaseFilePath) {
-		database = new UserDb(databaseFilePath);
+		this(new UserDb(databaseFilePath));
+	}
+
+	/**
+	 * Constructs an exposure tracker with a given database.
+	 * 
+	 * @param database The user database the tracker will read from and write to.
+	 */
+	public ExposureTracker(UserDb database) {
+		this.database = database;
+		propagator = new ExposurePropagator(database);
+		locks = database.getLocks();
+	}
+
+	/**
+	 * Saves all pending changes to the database file.
+	 */
+	public void close() {
+		changeStructure(() -> database.close());
 	}
 
 	/**
@@ -42,12 +70,13 @@ public class ExposureTracker {
 	 *                     registered, separated by ", ".
 	 */
 	public void createNewUser(User user, String testStatus, String interactions) {
-		// calls writeNewUser() from UserDb
-		int userLineNum = database.writeNewUser(user, testStatus, interactions);
-
-		// create empty records for the people who interacted with the user
-		createEmptyRecordsForInteractions(user, userLineNum, testStatus, interactions);
+		changeStructure(() -> {
+			// calls writeNewUser() from UserDb
+			int userLineNum = database.writeNewUser(user, testStatus, interactions);
 
+			// create empty records for the people who interacted with the user
+			createEmptyRecordsForInteractions(user, userLineNum, testStatus, interactions);
+		});
 	}
 
 	/**
@@ -62,6 +91,22 @@ public class ExposureTracker {
 	 *                     empty records for.
 	 */
 	public void createEmptyRecordsForInteractions(User user, int userLineNum, String testStatus, String interactions) {
+		// new records are added, so no other session may use the database meanwhile
+		changeStructure(() -> createEmptyRecords(user, userLineNum, testStatus, interactions));
+	}
+
+	/**
+	 * Creates empty records for given user's interactions after the structure was
+	 * locked.
+	 * 
+	 * @param user         The user whose interactions will be created records for.
+	 * @param userLineNum  The line number where the user's record starts on in the
+	 *                     file database.
+	 * @param testStatus   The test status of user.
+	 * @param interactions The list of interactions of user who will be created
+	 *                     empty records for.
+	 */
+	private void createEmptyRecords(User user, int userLineNum, String testStatus, String interactions) {
 
 		// if there are no interactions, return and don't create any empty records.
 		if (interactions.equals(""))
@@ -89,22 +134,58 @@ public class ExposureTracker {
 			// access to the empty records for the interactions
 			database.writeInteractionsRecLineNum(user, "" + lineNumInteractionRecords);
 
-			// if the user's test status is positive
-			if (testStatus.toUpperCase().equals("TESTED POSITIVE")) {
-				// update the exposure status of the empty record to 1
-				updateInteractionsExposure(lineNumInteractionRecords, 1);
-			}
+			// update the exposure status of the empty record to 1 if the user tested
+			// positive, or to the user's exposure status + 1
+			updateExposureForNewInteraction(userLineNum, lineNumInteractionRecords);
+		}
+	}
 
-			// read the exposure status of the user
-			String exposureStat = database.readExposureStat(user);
+	/**
+	 * Updates exposure statuses after an interaction between two records was
+	 * added. Only a record whose exposure status the new interaction makes more
+	 * severe is updated, and the update only spreads through records that improve
+	 * as well.
+	 * 
+	 * @param recLineNum1 The record line number of one side of the interaction.
+	 * @param recLineNum2 The record line number of the other side.
+	 */
+	private void updateExposureForNewInteraction(int recLineNum1, int recLineNum2) {
+		int level1 = exposureSourceLevel(recLineNum1);
+		if (level1 != -1)
+			propagator.propagateImprovement(recLineNum2, level1 + 1);
+
+		int level2 = exposureSourceLevel(recLineNum2);
+		if (level2 != -1)
+			propagator.propagateImprovement(recLineNum1, level2 + 1);
+	}
 
-			// if the exposure status of the user is not empty
-			if (!exposureStat.equals("")) {
-				// update the exposure status of the empty record to the user's exposure status
-				// + 1
-				updateInteractionsExposure(lineNumInteractionRecords, Integer.parseInt(exposureStat) + 1);
-			}
-		}
+	/**
+	 * Passes the exposure status of a record that empty records were merged into
+	 * on to its interactions. The record keeps the most severe status of the
+	 * merged records, which the interactions of the other merged records never
+	 * got.
+	 * 
+	 * @param recLineNum The record line number of the record that was kept.
+	 */
+	private void passOnMergedExposure(int recLineNum) {
+		int level = exposureSourceLevel(recLineNum);
+		if (level != -1)
+			propagator.propagate(recLineNum, level);
+	}
+
+	/**
+	 * Gets the exposure level a record passes on to its interactions.
+	 * 
+	 * @param recLineNum The record line number of the record.
+	 * @return 0 if the user tested positive, the user's exposure status, or -1 if
+	 *         the user has neither.
+	 */
+	private int exposureSourceLevel(int recLineNum) {
+		if (database.readTestStatus(recLineNum).equals("TESTED POSITIVE"))
+			return 0;
+
+		String exposureStat = database.readExposureStat(recLineNum);
+		return exposureStat.equals("") ? -1 : Integer.parseInt(exposureStat);
 	}
 
 	/**
@@ -116,6 +197,20 @@ public class ExposureTracker {
 	 * @param interactions The list of names of the user interactions.
 	 */
 	public void registerNewUser(User user, String testStatus, String interactions) {
+		// save the whole registration at once, or none of it if it fails
+		changeStructure(() -> runInTransaction(() -> registerUserRecords(user, testStatus, interactions)));
+	}
+
+	/**
+	 * Registers a user without opening a transaction.
+	 * 
+	 * @param user         The user to be registered.
+	 * @param testStatus   the test status of the new user to be registered.
+	 * @param interactions The list of names of the user interactions.
+	 */
+	private void registerUserRecords(User user, String testStatus, String interactions) {
+		// use the existing spelling of interaction names that were typed differently
+		interactions = resolveInteractionNames(user, interactions);
 
 		// if a record with the name of the user exists in the database and that record
 		// is an empty record, edit that record.
@@ -132,25 +227,25 @@ public class ExposureTracker {
 			// line number of the first matching empty record
 			int firstMatchingRecordLineNum = -1;
 
-			// list of interactions of the user trying to register converted to uppercase
-			String newInteractionsRecToMake = interactions.toUpperCase();
+			// line numbers of the other matching empty records, merged into the first one
+			// all at once
+			List<Integer> otherMatchingRecordLineNums = new ArrayList<>();
+
+			// names of the interactions of the user trying to register, parsed once so
+			// every empty record is matched by an exact lookup
+			InteractionNames interactionNames = new InteractionNames(interactions);
 
 			// for every empty record
 			for (Integer userRecordLineNum : unregisteredUserRecords) {
 
 				// read the only interaction of the empty record
-				String originalInteraction = database.readInteractions(userRecordLineNum)[0];
+				String originalInteraction = database.readFirstInteraction(userRecordLineNum);
 
 				// if the empty record's only interaction matches one of the interactions of the
 				// user trying to register, this confirms that the empty record belongs to the
-				// user trying to register
-				if (newInteractionsRecToMake.contains(originalInteraction)) {
-
-					// remove that one interaction that the empty record already has from the string
-					// containing new interactions to be added when registering the user
-					newInteractionsRecToMake = newInteractionsRecToMake.replace((originalInteraction + ", "), "");
-					newInteractionsRecToMake = newInteractionsRecToMake.replace((", " + originalInteraction), "");
-					newInteractionsRecToMake = newInteractionsRecToMake.replace((originalInteraction), "");
+				// user trying to register. The interaction the empty record already has is no
+				// longer one of the new interactions to be added when registering the user
+				if (interactionNames.match(originalInteraction)) {
 
 					// if this is the first empty record found matching the user trying to register
 					if (!foundFirstMatchingRecord) {
@@ -164,14 +259,19 @@ public class ExposureTracker {
 						// if this is not the first empty record found matching the user trying to
 						// register and another matching record ahs been found
 					} else {
-						// merge this empty matching record to the first empty record
-						database.mergeRecords(firstMatchingRecordLineNum, userRecordLineNum);
+						// merge this empty matching record to the first empty record later
+						otherMatchingRecordLineNums.add(userRecordLineNum);
 					}
 				}
 			}
 
+			// merge every other matching empty record to the first one in one pass
+			if (!otherMatchingRecordLineNums.isEmpty())
+				database.mergeRecords(firstMatchingRecordLineNum, otherMatchingRecordLineNums);
+
 			// if an empty record was found matching the user trying to register
 			if (foundFirstMatchingRecord) {
+				String newInteractionsRecToMake = interactionNames.getUnmatched();
 
 				// read the current exposure status of the empty record and store in "exposure"
 				String exposure = database.readExposureStat(firstMatchingRecordLineNum);
@@ -186,6 +286,10 @@ public class ExposureTracker {
 				database.writeEntireUserInfo(user, testStatus, exposure, newInteractionsRecToMake,
 						firstMatchingRecordLineNum);
 
+				// the interactions of every merged record get the status the user kept
+				if (!otherMatchingRecordLineNums.isEmpty() && !testStatus.equals("TESTED POSITIVE"))
+					passOnMergedExposure(firstMatchingRecordLineNum);
+
 				// create empty records for the user's interactions
 				createEmptyRecordsForInteractions(user, firstMatchingRecordLineNum, testStatus,
 						newInteractionsRecToMake);
@@ -207,6 +311,53 @@ public class ExposureTracker {
 
 	}
 
+	/**
+	 * Replaces every interaction name that is most likely a misspelling of the name
+	 * of an existing record with that name, so the interaction is linked to that
+	 * record instead of creating a new empty record for the other spelling.
+	 * 
+	 * @param user         The user whose interactions they are. A name is never
+	 *                     replaced with the user's own name, since nobody is
+	 *                     their own interaction.
+	 * @param interactions A list of interaction's names, separated by commas.
+	 * @return The list with misspelled names replaced, or the same list if no name
+	 *         was replaced.
+	 */
+	private String resolveInteractionNames(User user, String interactions) {
+		if (!fuzzyNameMatching)
+			return interactions;
+
+		String[] names = FieldTokenizer.split(interactions, ',');
+		boolean replaced = false;
+		for (int i = 0; i < names.length; i++) {
+			String similarName = database.findSimilarName(names[i], user.getName());
+			if (similarName != null && !similarName.equals(UserIndex.canonicalName(names[i]))) {
+				names[i] = similarName;
+				replaced = true;
+			}
+		}
+
+		// keep the list as it was typed unless a name changed
+		if (!replaced)
+			return interactions;
+
+		for (int i = 0; i < names.length; i++) {
+			names[i] = names[i].trim();
+		}
+		return String.join(", ", names);
+	}
+
+	/**
+	 * Sets whether interaction names that are most likely misspellings of an
+	 * existing record's name are linked to that record.
+	 * 
+	 * @param fuzzyNameMatching True to link misspelled names, false to only link
+	 *                          names that match exactly.
+	 */
+	public void setFuzzyNameMatching(boolean fuzzyNameMatching) {
+		this.fuzzyNameMatching = fuzzyNameMatching;
+	}
+
 	/**
 	 * Gets the user's COVID-19 test status .
 	 * 
@@ -214,7 +365,9 @@ public class ExposureTracker {
 	 * @return The user's COVID test status.
 	 */
 	public String getTestStatus(User user) {
-		return database.readTestStatus(user);
+		String[] testStatus = new String[1];
+		read(() -> testStatus[0] = database.readRecord(user).getTestStatus());
+		return testStatus[0];
 	}
 
 	/**
@@ -225,31 +378,15 @@ public class ExposureTracker {
 	 * @return The user's exposure status.
 	 */
 	public String getExposureStatus(User user) {
-
-		// read exposure status of user from database
-		String exp = database.readExposureStat(user);
-
-		if (!exp.equals((""))) {
-			// convert exposure status to word form
-			int exposure = Integer.parseInt(exp);
-			switch (exposure) {
-			case 1:
-				exp = "FIRST-DEGREE";
-				break;
-			case 2:
-				exp = "SECOND-DEGREE";
-				break;
-			case 3:
-				exp = "THIRD-DEGREE";
-				break;
-			default:
-				exp = "";
-			}
-
-		}
-
-		return exp;
-
+		// read exposure level of user from the cached record
+		int[] exposureLevel = new int[1];
+		read(() -> exposureLevel[0] = database.readRecord(user).getExposureLevel());
+		int exposure = exposureLevel[0];
+
+		// convert exposure level to word form
+		if (exposure < 1 || exposure >= EXPOSURE_WORDS.length)
+			return "";
+		return EXPOSURE_WORDS[exposure];
 	}
 
 	/**
@@ -259,7 +396,9 @@ public class ExposureTracker {
 	 * @return An array of the user's interactions.
 	 */
 	public String[] getUserInteractions(User user) {
-		return database.readInteractions(user);
+		String[][] interactions = new String[1][];
+		read(() -> interactions[0] = database.readRecord(user).getInteractions());
+		return interactions[0];
 	}
 
 	/**
@@ -274,7 +413,9 @@ public class ExposureTracker {
 	public boolean userAlrRegistered(User user) {
 		// check if the name exists in the database and if the record has an address
 		// (fully registered).
-		return database.nameExistsInDb(user) && database.userFullyRegistered(user);
+		boolean[] registered = new boolean[1];
+		read(() -> registered[0] = database.nameExistsInDb(user) && database.userFullyRegistered(user));
+		return registered[0];
 	}
 
 	/**
@@ -285,10 +426,44 @@ public class ExposureTracker {
 	 * @param interaction The name of the person whom the user has interacted with.
 	 */
 	public void addInteractions(User user, String interaction) {
+		// save all records changed by the new interaction at once. Records may be
+		// added or merged, so no other session may use the database meanwhile
+		changeStructure(() -> runInTransaction(() -> addInteractionRecords(user, interaction)));
+	}
+
+	/**
+	 * Adds several interactions to the user's current list of interactions in the
+	 * database. They are saved together, so either all of them are added or none.
+	 * 
+	 * @param user         The user who is adding the interactions.
+	 * @param interactions The names of the people whom the user has interacted
+	 *                     with.
+	 */
+	public void addInteractions(User user, List<String> interactions) {
+		changeStructure(() -> runInTransaction(() -> {
+			for (String interaction : interactions) {
+				addInteractionRecords(user, interaction);
+			}
+		}));
+	}
+
+	/**
+	 * Adds an interaction to the user's record without opening a transaction.
+	 * 
+	 * @param user        The user who is adding an interaction.
+	 * @param interaction The name of the person whom the user has interacted with.
+	 */
+	private void addInteractionRecords(User user, String interaction) {
+		// use the existing spelling of the interaction's name if it was typed
+		// differently
+		interaction = resolveInteractionNames(user, interaction);
 
 		// retrieve list of all empty records that matches the user
 		ArrayList<Integer> unregisteredUserRecords = database.findUnregisteredUser(user);
 
+		// the interaction's name, so every empty record is matched by an exact lookup
+		InteractionNames interactionNames = new InteractionNames(interaction);
+
 		// if empty records matching the user exist, the another user must have added
 		// the current user as an interaction and therefore an empty record for the
 		// current user was created.
@@ -297,30 +472,27 @@ public class ExposureTracker {
 		for (Integer userRecordLineNum : unregisteredUserRecords) {
 
 			// read the only interaction of the empty record
-			String originalInteraction = database.readInteractions(userRecordLineNum)[0];
+			String originalInteraction = database.readFirstInteraction(userRecordLineNum);
 
 			// if the empty record's only interaction matches one of the interactions of the
 			// user, this confirms that the empty record belongs to the
 			// user trying to add interactions
-			if (interaction.toUpperCase().contains(originalInteraction)) {
+			if (interactionNames.match(originalInteraction)) {
 
 				// store the record line number of the record who originally created the empty
 				// record (this is the record of an interaction the user is trying to add)
-				String[] toMergeOriginalInteractionRecLineNum = database.readInteractionsRecLineNum(userRecordLineNum);
-
-				// parse record line number into integer
-				int interactionOriginalRecLineNum = Integer.parseInt(toMergeOriginalInteractionRecLineNum[0]);
+				int interactionOriginalRecLineNum = database.readFirstInteractionRecLineNum(userRecordLineNum);
 
 				// merge empty record to record of user
-				database.mergeRecords(database.findRegisteredUser(user), userRecordLineNum);
+				int userLineNum = database.findRegisteredUser(user);
+				database.mergeRecords(userLineNum, userRecordLineNum);
 
-				// read exposure status of the user adding interactions
-				String exposureStat = database.readExposureStat(user);
+				// the user's other interactions get the status the empty record brought
+				passOnMergedExposure(userLineNum);
 
-				// if the user's exposure status is not empty, update the user's new interaction
-				// record to user's exposure status + 1.
-				if (!exposureStat.equals(""))
-					updateInteractionsExposure(interactionOriginalRecLineNum, Integer.parseInt(exposureStat) + 1);
+				// the user and the interaction are now connected, so update whichever side
+				// the other one makes more exposed
+				updateExposureForNewInteraction(userLineNum, interactionOriginalRecLineNum);
 
 				// completed adding interaction
 				return;
@@ -345,11 +517,191 @@ public class ExposureTracker {
 	 * @param status The user's Covid test status.
 	 */
 	public void updateTestStatus(User user, String status) {
-		// The status can either be negative, positive, or not tested.
-		database.writeTestStatus(user, status);
-		if (status.equals("TESTED POSITIVE")) {
-			updateInteractionsExposure(database.findRegisteredUser(user), 0);
-			database.writeExposureStatus(user, 0);
+		// save the test status and the exposure changes it causes at once
+		changeRecords(() -> runInTransaction(() -> {
+			// The status can either be negative, positive, or not tested.
+			boolean wasPositive = database.readTestStatus(user).equals("TESTED POSITIVE");
+			database.writeTestStatus(user, status);
+			if (status.equals("TESTED POSITIVE")) {
+				updateInteractionsExposure(database.findRegisteredUser(user), 0);
+				database.writeExposureStatus(user, 0);
+			} else if (wasPositive && !status.toUpperCase().equals("TESTED POSITIVE")) {
+				// a withdrawn positive result no longer exposes anyone, so raise the
+				// exposure statuses that came from it
+				propagator.withdraw(database.findRegisteredUser(user));
+			}
+		}));
+	}
+
+	/**
+	 * Updates the test status of many users at once, for example a batch of lab
+	 * results. All statuses are written first, then one propagation starts from
+	 * every user who tested positive, so records near several of them are only
+	 * visited once. Exposure that came from users whose positive result was
+	 * withdrawn is recomputed first. Everything is saved in a single write. If a
+	 * user appears more than once, only their last status counts.
+	 * 
+	 * @param results The users and their new test statuses.
+	 * @return The number of records visited and changed by the propagation.
+	 * @throws IllegalArgumentException If a user is not registered. Nothing is
+	 *                                  written in that case.
+	 */
+	public ExposurePropagator.PropagationStats updateTestStatuses(Collection<TestResult> results) {
+		ExposurePropagator.PropagationStats[] stats = new ExposurePropagator.PropagationStats[1];
+		changeRecords(() -> stats[0] = writeTestStatuses(results));
+		return stats[0];
+	}
+
+	/**
+	 * Updates the test status of many users at once after the database was
+	 * locked.
+	 * 
+	 * @param results The users and their new test statuses.
+	 * @return The number of records visited and changed by the propagation.
+	 * @throws IllegalArgumentException If a user is not registered.
+	 */
+	private ExposurePropagator.PropagationStats writeTestStatuses(Collection<TestResult> results) {
+		// find every user's record before writing anything
+		Map<Integer, String> statuses = new LinkedHashMap<>();
+		for (TestResult result : results) {
+			int userLineNum = database.findRegisteredUser(result.getUser());
+			if (userLineNum == -1)
+				throw new IllegalArgumentException("User is not registered: " + result.getUser().getName());
+
+			statuses.remove(userLineNum); // keep users in the order of their last result
+			statuses.put(userLineNum, result.getStatus());
+		}
+
+		ExposurePropagator.PropagationStats[] stats = new ExposurePropagator.PropagationStats[1];
+		runInTransaction(() -> {
+			List<Integer> positiveLineNums = new ArrayList<>();
+			List<Integer> withdrawnLineNums = new ArrayList<>();
+			for (Map.Entry<Integer, String> entry : statuses.entrySet()) {
+				boolean wasPositive = database.readTestStatus(entry.getKey()).equals("TESTED POSITIVE");
+				database.writeTestStatus(entry.getKey(), entry.getValue());
+				if (entry.getValue().equals("TESTED POSITIVE"))
+					positiveLineNums.add(entry.getKey());
+				else if (wasPositive && !entry.getValue().toUpperCase().equals("TESTED POSITIVE"))
+					withdrawnLineNums.add(entry.getKey());
+			}
+
+			// raise the exposure statuses that came from withdrawn positive results
+			// before spreading the new ones
+			for (int userLineNum : withdrawnLineNums) {
+				propagator.withdraw(userLineNum);
+			}
+
+			// spread exposure from every positive user at once, then clear their own
+			// exposure status like updateTestStatus does
+			stats[0] = propagator.propagate(positiveLineNums, 0);
+			for (int userLineNum : positiveLineNums) {
+				database.writeExposureStatus(userLineNum, 0);
+			}
+		});
+		return stats[0];
+	}
+
+	/**
+	 * Stores one user's test result for updateTestStatuses().
+	 */
+	public static class TestResult {
+		private User user;
+		private String status;
+
+		/**
+		 * Constructs a test result.
+		 * 
+		 * @param user   The user who was tested.
+		 * @param status The user's Covid test status.
+		 */
+		public TestResult(User user, String status) {
+			this.user = user;
+			this.status = status;
+		}
+
+		/**
+		 * Gets the user who was tested.
+		 * 
+		 * @return The user.
+		 */
+		public User getUser() {
+			return user;
+		}
+
+		/**
+		 * Gets the user's test status.
+		 * 
+		 * @return The test status.
+		 */
+		public String getStatus() {
+			return status;
+		}
+	}
+
+	/**
+	 * Runs the given work in a database transaction, so all of its changes are
+	 * saved in a single write, or none of them are saved if it fails.
+	 * 
+	 * @param work The database changes to be made.
+	 */
+	private void runInTransaction(Runnable work) {
+		database.beginTransaction();
+		try {
+			work.run();
+		} catch (RuntimeException | Error e) {
+			database.rollbackTransaction();
+			throw e;
+		}
+		database.commitTransaction();
+	}
+
+	/**
+	 * Runs work that only reads the database. Reads run at the same time as other
+	 * reads and changes to existing records, and only wait while the record they
+	 * read is being changed.
+	 * 
+	 * @param work The reads to be made.
+	 */
+	private void read(Runnable work) {
+		locks.lockShared();
+		try {
+			work.run();
+		} finally {
+			locks.unlockShared();
+		}
+	}
+
+	/**
+	 * Runs work that changes existing records but does not add, rename or merge
+	 * any. It runs at the same time as reads, but one at a time with other
+	 * changes.
+	 * 
+	 * @param work The database changes to be made.
+	 */
+	private void changeRecords(Runnable work) {
+		locks.lockShared();
+		locks.lockWriter();
+		try {
+			work.run();
+		} finally {
+			locks.unlockWriter();
+			locks.unlockShared();
+		}
+	}
+
+	/**
+	 * Runs work that adds, renames or merges records, which changes the indexes
+	 * every lookup uses. It waits until no other session is using the database,
+	 * and holds every other session until it is done.
+	 * 
+	 * @param work The database changes to be made.
+	 */
+	private void changeStructure(Runnable work) {
+		locks.lockStructure();
+		try {
+			work.run();
+		} finally {
+			locks.unlockStructure();
 		}
 	}
 
@@ -359,31 +711,48 @@ public class ExposureTracker {
 	 * 
 	 * @param userLineNum   The line number of the user's record.
 	 * @param exposureLevel The exposure level of the user.
+	 * @return The number of records visited and changed.
 	 */
-	public void updateInteractionsExposure(int userLineNum, int exposureLevel) {
-
-		// if the user's test status is not positive, update the exposureLevel in the
-		// user's record
-		if (!database.readTestStatus(userLineNum).equals("TESTED POSITIVE"))
-			database.writeExposureStatus(userLineNum, exposureLevel);
-
-		// Gets an array of all record line numbers of the user's interactions
-		String[] interactionsRecLineNum = database.readInteractionsRecLineNum(userLineNum);
+	public ExposurePropagator.PropagationStats updateInteractionsExposure(int userLineNum, int exposureLevel) {
+		// visit every record within third degree once and write the changes together
+		ExposurePropagator.PropagationStats[] stats = new ExposurePropagator.PropagationStats[1];
+		changeRecords(() -> stats[0] = propagator.propagate(userLineNum, exposureLevel));
+		return stats[0];
+	}
 
-		// if the exposure status of the user is less than 3 (third degree)
-		if (exposureLevel < 3) {
-			// For every record line number
-			for (String lineNum : interactionsRecLineNum) {
+	/**
+	 * Sets how many threads spread exposure through the interaction records.
+	 * Large propagations, for example from a user with many interactions, are
+	 * split between the threads one level at a time.
+	 * 
+	 * @param parallelism The number of threads, 1 to spread exposure on the calling
+	 *                    thread only.
+	 */
+	public void setPropagationParallelism(int parallelism) {
+		// no propagation may be running while the threads are replaced
+		changeStructure(() -> propagator.setParallelism(parallelism));
+	}
 
-				// parse into an integer
-				int intLineNum = Integer.parseInt(lineNum);
+	/**
+	 * Recomputes every user's exposure status from the test statuses and
+	 * interactions in the database, and corrects the statuses that disagree, for
+	 * example ones written before exposure could be withdrawn. Only the corrected
+	 * records are written, a batch at a time.
+	 * 
+	 * @return The number of records checked and corrected.
+	 */
+	public ExposureRebuilder.RebuildReport rebuildExposures() {
+		return new ExposureRebuilder(database).rebuild();
+	}
 
-				// update the exposure status of the user's interaction to the exposure status
-				// of
-				// the current user+1.
-				updateInteractionsExposure(intLineNum, exposureLevel + 1);
-			}
-		}
+	/**
+	 * Gets the number of records visited and changed by every exposure update so
+	 * far.
+	 * 
+	 * @return The totals of all exposure updates.
+	 */
+	public ExposurePropagator.PropagationStats getPropagationStats() {
+		return propagator.getTotalStats();
 	}
 
 }
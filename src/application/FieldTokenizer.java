@@ -0,0 +1,249 @@
+package application;
+
+/**
+ * Simulates a reader that walks through the separated fields of a database
+ * line without splitting it. Each field is only turned into a String or int
+ * when it is asked for, so reading one field of a line does not create the
+ * array and substrings that String.split would.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class FieldTokenizer {
+	private String separator; // text between fields, for example "|" or ", "
+	private CharSequence text; // line currently being read
+	private int end; // end of the part of the line being read (exclusive)
+	private int nextStart; // start of the next field, or past the end if there is none
+	private int fieldStart; // start of the current field
+	private int fieldEnd; // end of the current field (exclusive)
+
+	/**
+	 * Constructs a tokenizer for fields separated by the given text.
+	 *
+	 * @param separator The text between fields.
+	 */
+	public FieldTokenizer(String separator) {
+		this.separator = separator;
+		reset("");
+	}
+
+	/**
+	 * Starts reading a new line.
+	 *
+	 * @param text The line to be read.
+	 * @return This tokenizer.
+	 */
+	public FieldTokenizer reset(CharSequence text) {
+		return reset(text, 0, text.length());
+	}
+
+	/**
+	 * Starts reading part of a line, for example a field found by another
+	 * tokenizer.
+	 *
+	 * @param text  The line to be read.
+	 * @param start The first character of the part.
+	 * @param end   The character after the part.
+	 * @return This tokenizer.
+	 */
+	public FieldTokenizer reset(CharSequence text, int start, int end) {
+		this.text = text;
+		this.end = end;
+		nextStart = start;
+		fieldStart = start;
+		fieldEnd = start;
+		return this;
+	}
+
+	/**
+	 * Moves to the next field. Every field is visited, including an empty field
+	 * after a trailing separator.
+	 *
+	 * @return False if there are no more fields.
+	 */
+	public boolean next() {
+		if (nextStart > end)
+			return false;
+
+		fieldStart = nextStart;
+		fieldEnd = indexOfSeparator(fieldStart);
+		if (fieldEnd == -1) {
+			// the last field runs until the end of the line
+			fieldEnd = end;
+			nextStart = fieldEnd + 1;
+		} else {
+			nextStart = fieldEnd + separator.length();
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the current field.
+	 *
+	 * @return The current field as a String.
+	 */
+	public String field() {
+		return text.subSequence(fieldStart, fieldEnd).toString();
+	}
+
+	/**
+	 * Gets the current field parsed as an int, without creating a String.
+	 *
+	 * @return The value of the current field.
+	 * @throws NumberFormatException If the field is not a number.
+	 */
+	public int intField() {
+		return parseInt(text, fieldStart, fieldEnd);
+	}
+
+	/**
+	 * Gets the position of the current field in the line.
+	 *
+	 * @return The first character of the current field.
+	 */
+	public int fieldStart() {
+		return fieldStart;
+	}
+
+	/**
+	 * Gets the end of the current field in the line.
+	 *
+	 * @return The character after the current field.
+	 */
+	public int fieldEnd() {
+		return fieldEnd;
+	}
+
+	/**
+	 * Checks if the current field is empty.
+	 *
+	 * @return True if the current field has no characters.
+	 */
+	public boolean isFieldEmpty() {
+		return fieldStart == fieldEnd;
+	}
+
+	/**
+	 * Finds the next separator at or after the given position.
+	 */
+	private int indexOfSeparator(int from) {
+		int last = end - separator.length();
+		for (int i = from; i <= last; i++) {
+			if (text.charAt(i) == separator.charAt(0) && matchesSeparatorAt(i))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if the separator starts at the given position.
+	 */
+	private boolean matchesSeparatorAt(int pos) {
+		for (int i = 1; i < separator.length(); i++) {
+			if (text.charAt(pos + i) != separator.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parses part of a line as an int, the same way Integer.parseInt would parse
+	 * the substring, but without creating it.
+	 *
+	 * @param text  The line.
+	 * @param start The first character of the number.
+	 * @param end   The character after the number.
+	 * @return The value of the number.
+	 * @throws NumberFormatException If the part is not a number.
+	 */
+	public static int parseInt(CharSequence text, int start, int end) {
+		if (start >= end)
+			throw new NumberFormatException("For input string: \"\"");
+
+		boolean negative = text.charAt(start) == '-';
+		int pos = start;
+		if (negative || text.charAt(start) == '+')
+			pos++;
+		if (pos == end)
+			throw new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\"");
+
+		// a negative number can go one further than a positive one
+		long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long value = 0;
+		for (; pos < end; pos++) {
+			char c = text.charAt(pos);
+			value = value * 10 + (c - '0');
+			if (c < '0' || c > '9' || value > limit)
+				throw new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\"");
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * Splits a line at every separator character, giving the same result as
+	 * String.split with that character (trailing empty fields are dropped) but
+	 * without going through a regular expression or a temporary list.
+	 *
+	 * @param text      The line to be split.
+	 * @param separator The character between fields.
+	 * @return The fields of the line.
+	 */
+	public static String[] split(CharSequence text, char separator) {
+		int length = text.length();
+
+		// drop trailing empty fields
+		int end = length;
+		while (end > 0 && text.charAt(end - 1) == separator) {
+			end--;
+		}
+
+		// a line without separators is one field, even if it is empty
+		if (end == length && indexOf(text, separator, 0, length) == -1)
+			return new String[] { text.toString() };
+		if (end == 0)
+			return new String[0];
+
+		// count the fields so the array is created at its final size
+		int numFields = 1;
+		for (int i = 0; i < end; i++) {
+			if (text.charAt(i) == separator)
+				numFields++;
+		}
+
+		String[] fields = new String[numFields];
+		int start = 0;
+		for (int field = 0; field < numFields; field++) {
+			int fieldEnd = indexOf(text, separator, start, end);
+			if (fieldEnd == -1)
+				fieldEnd = end;
+			fields[field] = text.subSequence(start, fieldEnd).toString();
+			start = fieldEnd + 1;
+		}
+		return fields;
+	}
+
+	/**
+	 * Gets the first field of a line, the same as split(text, separator)[0] for
+	 * lines that have a first field.
+	 *
+	 * @param text      The line.
+	 * @param separator The character between fields.
+	 * @return The text before the first separator, or the whole line if it has
+	 *         none.
+	 */
+	public static String firstField(CharSequence text, char separator) {
+		int end = indexOf(text, separator, 0, text.length());
+		return text.subSequence(0, end == -1 ? text.length() : end).toString();
+	}
+
+	/**
+	 * Finds a character between two positions of a line.
+	 */
+	private static int indexOf(CharSequence text, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == c)
+				return i;
+		}
+		return -1;
+	}
+}
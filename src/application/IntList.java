@@ -0,0 +1,131 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Simulates a growable list of ints that does not box its values.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class IntList {
+	private int[] values;
+	private int size;
+
+	/**
+	 * Constructs an empty list.
+	 */
+	public IntList() {
+		this(4);
+	}
+
+	/**
+	 * Constructs an empty list with room for the given number of values.
+	 *
+	 * @param capacity The number of values the list can hold before growing.
+	 */
+	public IntList(int capacity) {
+		values = new int[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adds a value to the end of the list.
+	 *
+	 * @param value The value to be added.
+	 */
+	public void add(int value) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+		values[size++] = value;
+	}
+
+	/**
+	 * Adds values from an array to the end of the list.
+	 *
+	 * @param source The array holding the values.
+	 * @param from   The index of the first value to be added.
+	 * @param to     The index after the last value to be added.
+	 */
+	public void addAll(int[] source, int from, int to) {
+		int count = to - from;
+		if (size + count > values.length)
+			values = Arrays.copyOf(values, Math.max(size * 2, size + count));
+		System.arraycopy(source, from, values, size, count);
+		size += count;
+	}
+
+	/**
+	 * Gets the value at the given index.
+	 *
+	 * @param index The index of the value.
+	 * @return The value at that index.
+	 */
+	public int get(int index) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return values[index];
+	}
+
+	/**
+	 * Replaces the value at the given index.
+	 *
+	 * @param index The index of the value.
+	 * @param value The new value.
+	 */
+	public void set(int index, int value) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		values[index] = value;
+	}
+
+	/**
+	 * Removes the value at the given index, moving the values after it down.
+	 *
+	 * @param index The index of the value.
+	 */
+	public void remove(int index) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+	}
+
+	/**
+	 * Searches for the first index of a value.
+	 *
+	 * @param value The value to be searched for.
+	 * @return The index of the value, or -1 if it is not in the list.
+	 */
+	public int indexOf(int value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the number of values in the list.
+	 *
+	 * @return The number of values.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every value from the list without giving up its memory.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Copies the values into a new array.
+	 *
+	 * @return An array holding the values of the list.
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,62 @@
+package application;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Simulates the list of interaction names a user entered, parsed once into
+ * canonical names so placeholder records can be matched against it by exact
+ * name. A placeholder whose first interaction is "ANN LEE" matches a list that
+ * contains "ANN LEE", but not one that only contains "JOANN LEE". The names that
+ * no placeholder matched are kept in the order they were entered, so records
+ * can still be created for them.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class InteractionNames {
+	private Set<String> names = new HashSet<>(); // every canonical name in the list
+	private Set<String> unmatched = new LinkedHashSet<>(); // names not matched yet, in list order
+
+	/**
+	 * Constructs the names of a list of interactions.
+	 *
+	 * @param interactions The names of the interactions, separated by commas.
+	 */
+	public InteractionNames(String interactions) {
+		// empty names, for example from an empty list, are left out
+		for (String name : FieldTokenizer.split(interactions, ',')) {
+			String canonical = UserIndex.canonicalName(name);
+			if (!canonical.equals("") && names.add(canonical))
+				unmatched.add(canonical);
+		}
+	}
+
+	/**
+	 * Checks if the list contains the given name, and if it does, marks the name
+	 * as matched so it is no longer one of the unmatched names.
+	 *
+	 * @param name The name to be looked up, for example the first interaction of
+	 *             a placeholder record.
+	 * @return True if the list contains exactly that name.
+	 */
+	public boolean match(String name) {
+		String canonical = UserIndex.canonicalName(name);
+		if (!names.contains(canonical))
+			return false;
+
+		unmatched.remove(canonical);
+		return true;
+	}
+
+	/**
+	 * Gets the names that no call to match() matched.
+	 *
+	 * @return The unmatched names separated by ", ", or an empty string if every
+	 *         name was matched.
+	 */
+	public String getUnmatched() {
+		return String.join(", ", unmatched);
+	}
+}
@@ -0,0 +1,300 @@
+package application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Simulates the small amount of JSON the HTTP API needs, without a JSON
+ * library. Requests are flat objects whose values are strings, numbers,
+ * booleans, null or arrays of strings, for example
+ * {"name": "ANN LEE", "zip": 90210, "interactions": ["BOB RAY", "JO DOE"]}.
+ * Every value is read as a string, and an array of strings is read as its
+ * elements separated by ", ", the same way interactions are typed in the GUI.
+ * Responses are built a field at a time.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class JsonFields {
+	private StringBuilder json = new StringBuilder("{");
+	private boolean hasFields; // whether a comma is needed before the next field
+
+	/**
+	 * Parses a flat JSON object into its fields.
+	 *
+	 * @param text The JSON text of the object.
+	 * @return The fields in the order they appear, with null values left out.
+	 * @throws IllegalArgumentException If the text is not a flat JSON object.
+	 */
+	public static Map<String, String> parse(String text) {
+		Parser parser = new Parser(text);
+		Map<String, String> fields = new LinkedHashMap<>();
+
+		parser.expect('{');
+		if (!parser.skip('}')) {
+			do {
+				String name = parser.readString();
+				parser.expect(':');
+				String value = parser.readValue();
+				if (value != null)
+					fields.put(name, value);
+			} while (parser.skip(','));
+			parser.expect('}');
+		}
+
+		if (!parser.atEnd())
+			throw new IllegalArgumentException("Unexpected text after the JSON object");
+		return fields;
+	}
+
+	/**
+	 * Adds a string field to the response.
+	 *
+	 * @param name  The name of the field.
+	 * @param value The value of the field.
+	 * @return This response.
+	 */
+	public JsonFields add(String name, String value) {
+		startField(name);
+		quote(value);
+		return this;
+	}
+
+	/**
+	 * Adds a boolean field to the response.
+	 *
+	 * @param name  The name of the field.
+	 * @param value The value of the field.
+	 * @return This response.
+	 */
+	public JsonFields add(String name, boolean value) {
+		startField(name);
+		json.append(value);
+		return this;
+	}
+
+	/**
+	 * Adds an array of strings to the response.
+	 *
+	 * @param name   The name of the field.
+	 * @param values The strings in the array.
+	 * @return This response.
+	 */
+	public JsonFields add(String name, String[] values) {
+		startField(name);
+		json.append('[');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				json.append(',');
+			quote(values[i]);
+		}
+		json.append(']');
+		return this;
+	}
+
+	/**
+	 * Returns the JSON text of the response.
+	 */
+	@Override
+	public String toString() {
+		return json + "}";
+	}
+
+	/**
+	 * Writes the name of a field, after a comma if it is not the first field.
+	 */
+	private void startField(String name) {
+		if (hasFields)
+			json.append(',');
+		hasFields = true;
+		quote(name);
+		json.append(':');
+	}
+
+	/**
+	 * Writes a string in quotes, escaping the characters JSON does not allow in a
+	 * string.
+	 */
+	private void quote(String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				// other control characters are written as unicode escapes
+				if (c < ' ')
+					json.append(String.format("\\u%04x", (int) c));
+				else
+					json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Reads the values of a JSON object one token at a time.
+	 */
+	private static class Parser {
+		private String text;
+		private int pos; // next character to be read
+
+		private Parser(String text) {
+			this.text = text;
+		}
+
+		/**
+		 * Reads a value as a string, or returns null for a JSON null.
+		 */
+		private String readValue() {
+			skipSpaces();
+			if (pos >= text.length())
+				throw new IllegalArgumentException("Missing value at the end of the JSON text");
+
+			char c = text.charAt(pos);
+			if (c == '"')
+				return readString();
+			if (c == '[')
+				return readStringArray();
+			if (c == '{')
+				throw new IllegalArgumentException("Nested objects are not supported");
+
+			// numbers, booleans and null are read as the literal text
+			int start = pos;
+			while (pos < text.length() && "+-.0123456789abcdefghijklmnopqrstuvwxyzE".indexOf(text.charAt(pos)) >= 0) {
+				pos++;
+			}
+			String literal = text.substring(start, pos);
+			if (literal.equals("null"))
+				return null;
+			if (literal.equals("true") || literal.equals("false") || literal.matches("-?[0-9]+(\\.[0-9]+)?([eE][+-]?[0-9]+)?"))
+				return literal;
+			throw new IllegalArgumentException("Unexpected value at position " + start);
+		}
+
+		/**
+		 * Reads an array of strings and joins its elements with ", ".
+		 */
+		private String readStringArray() {
+			expect('[');
+			StringBuilder joined = new StringBuilder();
+			if (!skip(']')) {
+				do {
+					if (joined.length() > 0)
+						joined.append(", ");
+					joined.append(readString());
+				} while (skip(','));
+				expect(']');
+			}
+			return joined.toString();
+		}
+
+		/**
+		 * Reads a string in quotes, replacing its escapes.
+		 */
+		private String readString() {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (true) {
+				if (pos >= text.length())
+					throw new IllegalArgumentException("Unterminated string in the JSON text");
+
+				char c = text.charAt(pos++);
+				if (c == '"')
+					return value.toString();
+				if (c != '\\') {
+					value.append(c);
+					continue;
+				}
+
+				if (pos >= text.length())
+					throw new IllegalArgumentException("Unterminated string in the JSON text");
+				char escaped = text.charAt(pos++);
+				switch (escaped) {
+				case '"':
+				case '\\':
+				case '/':
+					value.append(escaped);
+					break;
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'u':
+					if (pos + 4 > text.length())
+						throw new IllegalArgumentException("Incomplete unicode escape in the JSON text");
+					try {
+						value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid unicode escape in the JSON text");
+					}
+					pos += 4;
+					break;
+				default:
+					throw new IllegalArgumentException("Invalid escape \\" + escaped + " in the JSON text");
+				}
+			}
+		}
+
+		/**
+		 * Skips the given character, after any spaces, if it is next.
+		 *
+		 * @return True if the character was skipped.
+		 */
+		private boolean skip(char c) {
+			skipSpaces();
+			if (pos < text.length() && text.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Skips the given character, after any spaces, or fails if it is not next.
+		 */
+		private void expect(char c) {
+			if (!skip(c))
+				throw new IllegalArgumentException("Expected '" + c + "' at position " + pos + " of the JSON text");
+		}
+
+		/**
+		 * Checks if only spaces are left.
+		 */
+		private boolean atEnd() {
+			skipSpaces();
+			return pos >= text.length();
+		}
+
+		private void skipSpaces() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+	}
+}
@@ -38,7 +38,7 @@ import javafx.stage.Stage;
  */
 public class Main extends Application {
 
-	private ExposureTracker expTracker = new ExposureTracker("FileDatabase.txt");
+	private ExposureTracker expTracker = new ExposureTracker(openDatabase());
 	private User currentSystemUser = null; // stores user currently logged in
 
 	// get dimensions of the user's screen to make sure the app will appear full screen
@@ -96,6 +96,24 @@ public class Main extends Application {
 
 	}
 
+	/**
+	 * Opens the database so changes are journaled and saved on a background
+	 * thread, keeping disk writes off the JavaFX Application Thread.
+	 * 
+	 * @return The user database.
+	 */
+	private static UserDb openDatabase() {
+		UserDb database = new UserDb("FileDatabase.txt", true);
+		database.enableAsyncWrites(DatabaseWriter.DurabilityPolicy.INTERVAL, 1000);
+		return database;
+	}
+
+	@Override
+	public void stop() throws Exception {
+		// write journaled changes into the database file before exiting
+		expTracker.close();
+	}
+
 	public static void main(String[] args) {
 		launch(args);
 	}
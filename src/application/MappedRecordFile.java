@@ -0,0 +1,316 @@
+package application;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+
+//NOTE: Record file will be in the form
+//Header: magic number, version, number of lines, end of variable-length area
+//Slot #1: 6 fields, one for each line of the record
+//Slot #2: ....
+//
+//Every field is a 2 byte length followed by the bytes of the line. A line that
+//does not fit into its field is stored in the variable-length file
+//(<file>.var) instead, and the field holds a length of -1 followed by the
+//position and length of the line in the variable-length file.
+//
+//The number of lines in the header only counts lines whose data was already
+//forced to disk, so after a crash it never covers a slot that was not filled.
+
+/**
+ * Simulates the lines of the database stored in fixed-size record slots of a
+ * memory-mapped file, so changing the test or exposure status of a record only
+ * writes a few bytes in place.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class MappedRecordFile extends AbstractList<String> {
+	private static final int MAGIC = 0x43564442; // "CVDB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 256;
+	private static final int SLOT_SIZE = 256;
+
+	// bytes available to each of the 6 lines of a record:
+	// name|address, test status, exposure status, interactions, interaction
+	// record line numbers, empty line between records
+	private static final int[] FIELD_CAPACITY = { 160, 24, 12, 12, 12, 12 };
+	private static final int[] FIELD_OFFSET = new int[6];
+	static {
+		int offset = 0;
+		for (int field = 0; field < 6; field++) {
+			FIELD_OFFSET[field] = offset;
+			offset += 2 + FIELD_CAPACITY[field];
+		}
+	}
+
+	// positions of the header values
+	private static final int NUM_LINES_POS = 8;
+	private static final int VAR_END_POS = 12;
+
+	private FileChannel recordChannel;
+	private FileChannel varChannel;
+	private MappedByteBuffer records;
+	private MappedByteBuffer var;
+	private int numLines;
+	private int publishedNumLines; // number of lines the header counts
+	private long varEnd;
+
+	/**
+	 * Opens the record file at the given path, creating it if it does not exist.
+	 *
+	 * @param filePath Path to the record file.
+	 * @throws IOException If the file cannot be opened or is not a record file.
+	 */
+	@SuppressWarnings("resource")
+	public MappedRecordFile(String filePath) throws IOException {
+		recordChannel = new RandomAccessFile(filePath, "rw").getChannel();
+		varChannel = new RandomAccessFile(filePath + ".var", "rw").getChannel();
+
+		boolean newFile = recordChannel.size() == 0;
+		records = recordChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+				Math.max(recordChannel.size(), HEADER_SIZE + 64L * SLOT_SIZE));
+		var = varChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(varChannel.size(), 64L * 1024));
+
+		if (newFile) {
+			records.putInt(0, MAGIC);
+			records.putInt(4, VERSION);
+			records.putInt(NUM_LINES_POS, 0);
+			records.putLong(VAR_END_POS, 0);
+		} else if (records.getInt(0) != MAGIC) {
+			throw new IOException(filePath + " is not a record file");
+		}
+
+		// only the header is read, so opening the file does not depend on the number
+		// of records
+		numLines = records.getInt(NUM_LINES_POS);
+		varEnd = records.getLong(VAR_END_POS);
+
+		// a header from a file that was cut short cannot count slots past its end
+		long numSlots = (recordChannel.size() - HEADER_SIZE) / SLOT_SIZE;
+		if (numLines < 0 || numLines > numSlots * 6)
+			throw new IOException(filePath + " counts " + numLines + " lines but only has room for " + numSlots * 6);
+		publishedNumLines = numLines;
+	}
+
+	/**
+	 * Gets the line at the given line number.
+	 */
+	@Override
+	public String get(int lineNum) {
+		if (lineNum < 0 || lineNum >= numLines)
+			throw new IndexOutOfBoundsException("Line: " + lineNum + ", Lines: " + numLines);
+
+		int pos = fieldPos(lineNum);
+		short length = records.getShort(pos);
+
+		// if the line is stored in the variable-length file
+		if (length == -1) {
+			long varPos = records.getLong(pos + 2);
+			int varLength = records.getInt(pos + 10);
+			return readString(var, (int) varPos, varLength);
+		}
+
+		return readString(records, pos + 2, length);
+	}
+
+	/**
+	 * Overwrites the line at the given line number in place. The change is only
+	 * certain to be on disk after the next force(), or after publishLines() when
+	 * lines were added.
+	 */
+	@Override
+	public String set(int lineNum, String line) {
+		String previous = get(lineNum);
+		writeField(lineNum, line);
+		return previous;
+	}
+
+	/**
+	 * Adds a line to the end of the file.
+	 */
+	@Override
+	public void add(int lineNum, String line) {
+		if (lineNum != numLines)
+			throw new UnsupportedOperationException("Lines can only be added to the end of the record file");
+
+		// make room for a new slot when the first line of a record is added
+		ensureCapacity(HEADER_SIZE + (long) (lineNum / 6 + 1) * SLOT_SIZE);
+
+		// the header only counts the line once publishLines() forced it to disk
+		writeField(lineNum, line);
+		numLines++;
+		modCount++;
+	}
+
+	/**
+	 * Removes lines from the end of the file. Only used to undo lines added by a
+	 * transaction, so the lines must reach the end of the file.
+	 */
+	@Override
+	protected void removeRange(int fromLineNum, int toLineNum) {
+		if (toLineNum != numLines)
+			throw new UnsupportedOperationException("Lines can only be removed from the end of the record file");
+
+		numLines = fromLineNum;
+
+		// counting fewer lines is always safe, so the header is lowered right away
+		if (numLines < publishedNumLines) {
+			records.putInt(NUM_LINES_POS, numLines);
+			publishedNumLines = numLines;
+		}
+		modCount++;
+	}
+
+	/**
+	 * Gets the number of lines in the file.
+	 */
+	@Override
+	public int size() {
+		return numLines;
+	}
+
+	/**
+	 * Writes all changes in the mapped files to disk.
+	 */
+	public void force() {
+		var.force();
+		records.force();
+		publishLines();
+	}
+
+	/**
+	 * Makes the lines added since the last call count in the header. Their data
+	 * is forced to disk first and the header after it, so a crash at any point
+	 * leaves a header that only counts lines that were fully written. If no lines
+	 * were added, nothing is forced, so lines only changed in place need force().
+	 */
+	public void publishLines() {
+		if (publishedNumLines == numLines)
+			return;
+
+		var.force();
+		records.force();
+		records.putInt(NUM_LINES_POS, numLines);
+		records.force();
+		publishedNumLines = numLines;
+	}
+
+	/**
+	 * Writes all changes to disk and closes the files.
+	 *
+	 * @throws IOException If the files cannot be closed.
+	 */
+	public void close() throws IOException {
+		force();
+		recordChannel.close();
+		varChannel.close();
+	}
+
+	/**
+	 * Gets the position in the record file of the field holding the given line.
+	 */
+	private static int fieldPos(int lineNum) {
+		return HEADER_SIZE + (lineNum / 6) * SLOT_SIZE + FIELD_OFFSET[lineNum % 6];
+	}
+
+	/**
+	 * Writes a line into its field, or into the variable-length file if it does
+	 * not fit.
+	 */
+	private void writeField(int lineNum, String line) {
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		int pos = fieldPos(lineNum);
+
+		// if the line fits into its field, write it in place
+		if (bytes.length <= FIELD_CAPACITY[lineNum % 6]) {
+			records.putShort(pos, (short) bytes.length);
+			for (int i = 0; i < bytes.length; i++) {
+				records.put(pos + 2 + i, bytes[i]);
+			}
+			return;
+		}
+
+		// if the line was already in the variable-length file and still fits into the
+		// space reserved for it, overwrite it there
+		if (records.getShort(pos) == -1 && bytes.length <= varCapacity(records.getInt(pos + 10))) {
+			long varPos = records.getLong(pos + 2);
+			for (int i = 0; i < bytes.length; i++) {
+				var.put((int) varPos + i, bytes[i]);
+			}
+			records.putInt(pos + 10, bytes.length);
+			return;
+		}
+
+		// otherwise, append the line to the variable-length file and point to it
+		long varPos = appendVar(bytes);
+		records.putLong(pos + 2, varPos);
+		records.putInt(pos + 10, bytes.length);
+		records.putShort(pos, (short) -1);
+	}
+
+	/**
+	 * Gets the space reserved in the variable-length file for a line of the given
+	 * length. Space is reserved in powers of two so a growing interactions line
+	 * is only moved a few times.
+	 */
+	private static int varCapacity(int length) {
+		int capacity = 16;
+		while (capacity < length) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Appends bytes to the variable-length file.
+	 *
+	 * @return The position the bytes were written at.
+	 */
+	private long appendVar(byte[] bytes) {
+		long varPos = varEnd;
+		int reserved = varCapacity(bytes.length);
+		if (varPos + reserved > var.capacity()) {
+			try {
+				var = varChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+						Math.max(var.capacity() * 2L, varPos + reserved));
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not grow " + varChannel, e);
+			}
+		}
+
+		for (int i = 0; i < bytes.length; i++) {
+			var.put((int) varPos + i, bytes[i]);
+		}
+		varEnd += reserved;
+		records.putLong(VAR_END_POS, varEnd);
+		return varPos;
+	}
+
+	/**
+	 * Grows the record file so it can hold the given number of bytes.
+	 */
+	private void ensureCapacity(long size) {
+		if (size <= records.capacity())
+			return;
+		try {
+			records = recordChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(records.capacity() * 2L, size));
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not grow " + recordChannel, e);
+		}
+	}
+
+	/**
+	 * Reads a UTF-8 string out of a mapped buffer.
+	 */
+	private static String readString(MappedByteBuffer buffer, int pos, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(pos + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,205 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simulates an index of names that finds every name within a few edits of a
+ * given name without comparing it to every name. Each name is cut into 3 parts
+ * and stored under each part. One edit can only change one part, so a name
+ * within 2 edits of the searched name still has at least one part that appears
+ * unchanged in the searched name, at most 2 characters away from where it is in
+ * the stored name. A search therefore only looks up a few dozen parts and
+ * compares the few names stored under them.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class NameSimilarityIndex {
+	private static final int NUM_PARTS = 3; // allows searches of up to 2 edits
+
+	// name length, part number and part text -> names with that part
+	private Map<String, List<String>> partIndex = new HashMap<>();
+	private int size; // number of names in the index
+
+	/**
+	 * Gets the largest number of edits a search can allow.
+	 *
+	 * @return The largest maxDistance that search() accepts.
+	 */
+	public static int getMaxSearchDistance() {
+		return NUM_PARTS - 1;
+	}
+
+	/**
+	 * Adds a name to the index, unless it is already in it.
+	 *
+	 * @param name The name to be added.
+	 * @return True if the name was added.
+	 */
+	public boolean add(String name) {
+		List<String> firstPartNames = partIndex.get(partKey(name, 0));
+		if (firstPartNames != null && firstPartNames.contains(name))
+			return false;
+
+		for (int part = 0; part < NUM_PARTS; part++) {
+			String key = partKey(name, part);
+			List<String> names = partIndex.get(key);
+			if (names == null) {
+				names = new ArrayList<>(1);
+				partIndex.put(key, names);
+			}
+			names.add(name);
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes a name from the index.
+	 *
+	 * @param name The name to be removed.
+	 * @return True if the name was in the index.
+	 */
+	public boolean remove(String name) {
+		boolean removed = false;
+		for (int part = 0; part < NUM_PARTS; part++) {
+			String key = partKey(name, part);
+			List<String> names = partIndex.get(key);
+			if (names != null && names.remove(name)) {
+				removed = true;
+				if (names.isEmpty())
+					partIndex.remove(key);
+			}
+		}
+
+		if (removed)
+			size--;
+		return removed;
+	}
+
+	/**
+	 * Searches for every name within the given number of edits of a name.
+	 *
+	 * @param name        The name to be searched for.
+	 * @param maxDistance The largest number of edits allowed, at most
+	 *                    getMaxSearchDistance().
+	 * @return The names found, including the name itself if it is in the index,
+	 *         in no particular order.
+	 * @throws IllegalArgumentException If maxDistance is too large for the index.
+	 */
+	public List<String> search(String name, int maxDistance) {
+		if (maxDistance < 0 || maxDistance > getMaxSearchDistance())
+			throw new IllegalArgumentException("Edit distance must be between 0 and " + getMaxSearchDistance());
+
+		Set<String> found = new HashSet<>();
+		int length = name.length();
+
+		// stored names can only be as many characters shorter or longer as the number
+		// of edits allowed
+		for (int storedLength = Math.max(0, length - maxDistance); storedLength <= length
+				+ maxDistance; storedLength++) {
+			for (int part = 0; part < NUM_PARTS; part++) {
+				int partStart = partStart(storedLength, part);
+				int partEnd = partStart(storedLength, part + 1);
+
+				// edits before the part move it by up to maxDistance characters
+				for (int shift = -maxDistance; shift <= maxDistance; shift++) {
+					if (partStart + shift < 0 || partEnd + shift > length)
+						continue;
+
+					List<String> names = partIndex
+							.get(partKey(storedLength, part, name.substring(partStart + shift, partEnd + shift)));
+					if (names == null)
+						continue;
+
+					// the part only says the name might be close, so check the whole name
+					for (String candidate : names) {
+						if (!found.contains(candidate) && editDistance(name, candidate, maxDistance) <= maxDistance)
+							found.add(candidate);
+					}
+				}
+			}
+		}
+		return new ArrayList<>(found);
+	}
+
+	/**
+	 * Gets the number of names in the index.
+	 *
+	 * @return The number of names.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Calculates the Levenshtein distance between two strings: the smallest number
+	 * of characters that have to be inserted, deleted or replaced to turn one into
+	 * the other. The calculation stops as soon as the distance is known to be more
+	 * than maxDistance.
+	 *
+	 * @param a           The first string.
+	 * @param b           The second string.
+	 * @param maxDistance The largest distance that has to be exact.
+	 * @return The edit distance, or maxDistance + 1 if it is larger than
+	 *         maxDistance.
+	 */
+	public static int editDistance(String a, String b, int maxDistance) {
+		if (Math.abs(a.length() - b.length()) > maxDistance)
+			return maxDistance + 1;
+
+		// only the previous row of the distance table is needed for the next one
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = i;
+			for (int j = 1; j <= b.length(); j++) {
+				int replace = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+				current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+				rowMin = Math.min(rowMin, current[j]);
+			}
+
+			// distances never go down from one row to the next
+			if (rowMin > maxDistance)
+				return maxDistance + 1;
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[b.length()], maxDistance + 1);
+	}
+
+	/**
+	 * Gets the position where a part starts in a name of the given length.
+	 */
+	private static int partStart(int length, int part) {
+		return length * part / NUM_PARTS;
+	}
+
+	/**
+	 * Gets the key a part of a name is stored under.
+	 */
+	private static String partKey(String name, int part) {
+		int length = name.length();
+		return partKey(length, part, name.substring(partStart(length, part), partStart(length, part + 1)));
+	}
+
+	/**
+	 * Gets the key of a part from the length of the name, the part number and the
+	 * text of the part.
+	 */
+	private static String partKey(int length, int part, String text) {
+		return length + ":" + part + ":" + text;
+	}
+}
@@ -0,0 +1,269 @@
+package application;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a text database file on several threads. The file is memory-mapped and
+ * cut into chunks that start on record boundaries (every 6th line), and each
+ * chunk is parsed into lines and contact graph rows at the same time as the
+ * others.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ParallelDatabaseLoader {
+	private static final int MIN_CHUNK_SIZE = 1 << 20; // 1 MB
+	private static final int MAX_CHUNK_SIZE = 1 << 28; // 256 MB, so every chunk can be mapped
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs a loader that uses the common ForkJoin pool.
+	 */
+	public ParallelDatabaseLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs a loader that parses chunks on the given pool.
+	 *
+	 * @param pool The pool the chunks are parsed on.
+	 */
+	public ParallelDatabaseLoader(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Stores the lines of a loaded database and its contact graph.
+	 */
+	public static class LoadedDatabase {
+		List<String> lines; // all lines of the database
+		int[] graphOffsets; // contact graph offsets, see ContactGraph
+		int[] graphNeighbours; // contact graph neighbours, see ContactGraph
+
+		/**
+		 * Gets the lines of the database.
+		 *
+		 * @return All lines of the database.
+		 */
+		public List<String> getLines() {
+			return lines;
+		}
+
+		/**
+		 * Builds the contact graph parsed from the 5th line of every record.
+		 *
+		 * @return The contact graph.
+		 */
+		public ContactGraph toContactGraph() {
+			return new ContactGraph(graphOffsets, graphNeighbours);
+		}
+	}
+
+	/**
+	 * Loads a text database file.
+	 *
+	 * @param filePath Path to the database file.
+	 * @return The lines and contact graph of the database.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public LoadedDatabase load(String filePath) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+
+			// cut the file into about 4 chunks per thread
+			long chunkSize = fileSize / (pool.getParallelism() * 4L) + 1;
+			chunkSize = Math.min(Math.max(chunkSize, MIN_CHUNK_SIZE), MAX_CHUNK_SIZE);
+			int numChunks = (int) ((fileSize + chunkSize - 1) / chunkSize);
+
+			// count the lines in every chunk at the same time
+			List<Callable<long[]>> countTasks = new ArrayList<>();
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				long start = chunk * chunkSize;
+				long end = Math.min(fileSize, start + chunkSize);
+				countTasks.add(() -> countNewlines(channel, start, end));
+			}
+			List<long[]> counts = getAll(pool.invokeAll(countTasks));
+
+			// find the first record boundary in every chunk, and join chunks that have
+			// no boundary with the chunk before them
+			List<Long> segmentStarts = new ArrayList<>();
+			List<Integer> segmentFirstLines = new ArrayList<>();
+			segmentStarts.add(0L);
+			segmentFirstLines.add(0);
+			long linesBefore = counts.isEmpty() ? 0 : counts.get(0)[0];
+			for (int chunk = 1; chunk < numChunks; chunk++) {
+				long[] chunkCounts = counts.get(chunk);
+
+				// the line after the j-th newline of this chunk is line linesBefore + j,
+				// so the first record starts after newline 6 - linesBefore % 6
+				int j = (int) (6 - linesBefore % 6);
+				if (j <= chunkCounts[0]) {
+					segmentStarts.add(chunkCounts[j] + 1);
+					segmentFirstLines.add((int) (linesBefore + j));
+				}
+				linesBefore += chunkCounts[0];
+			}
+			segmentStarts.add(fileSize);
+
+			// parse every segment at the same time
+			List<Callable<Segment>> parseTasks = new ArrayList<>();
+			for (int i = 0; i < segmentFirstLines.size(); i++) {
+				long start = segmentStarts.get(i);
+				long end = segmentStarts.get(i + 1);
+				parseTasks.add(() -> parseSegment(channel, start, end));
+			}
+			return combine(getAll(pool.invokeAll(parseTasks)));
+		}
+	}
+
+	/**
+	 * Counts the newlines between two positions of the file.
+	 *
+	 * @return The number of newlines, followed by the positions of the first 6
+	 *         newlines.
+	 */
+	private static long[] countNewlines(FileChannel channel, long start, long end) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		long[] counts = new long[7];
+		int count = 0;
+
+		for (int i = 0; i < buffer.limit(); i++) {
+			if (buffer.get(i) == '\n') {
+				count++;
+				if (count <= 6)
+					counts[count] = start + i;
+			}
+		}
+		counts[0] = count;
+		return counts;
+	}
+
+	/**
+	 * Stores the lines and contact graph rows parsed from one segment of the file.
+	 */
+	private static class Segment {
+		List<String> lines = new ArrayList<>();
+		IntList degrees = new IntList(); // number of interactions of every record
+		IntList neighbours = new IntList(); // interactions of every record in order
+	}
+
+	/**
+	 * Parses the lines between two positions of the file. The segment starts on a
+	 * record boundary, so the 5th line of every record is every 6th line starting
+	 * at line 4.
+	 */
+	private static Segment parseSegment(FileChannel channel, long start, long end) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		Segment segment = new Segment();
+		byte[] lineBytes = new byte[256];
+		int lineLength = 0;
+
+		for (int i = 0; i < buffer.limit(); i++) {
+			byte b = buffer.get(i);
+			if (b == '\n') {
+				addLine(segment, lineBytes, lineLength);
+				lineLength = 0;
+			} else {
+				if (lineLength == lineBytes.length)
+					lineBytes = Arrays.copyOf(lineBytes, lineLength * 2);
+				lineBytes[lineLength++] = b;
+			}
+		}
+
+		// the last line of the file might not end with a newline
+		if (lineLength > 0)
+			addLine(segment, lineBytes, lineLength);
+
+		// records cut off by the end of the file have no interactions line
+		while (segment.degrees.size() < (segment.lines.size() + 5) / 6) {
+			segment.degrees.add(0);
+		}
+		return segment;
+	}
+
+	/**
+	 * Adds a parsed line to a segment, and its interactions to the segment's graph
+	 * rows if it is the 5th line of a record.
+	 */
+	private static void addLine(Segment segment, byte[] lineBytes, int lineLength) {
+		// ignore the carriage return of Windows line endings
+		if (lineLength > 0 && lineBytes[lineLength - 1] == '\r')
+			lineLength--;
+
+		String line = new String(lineBytes, 0, lineLength, StandardCharsets.UTF_8);
+		if (segment.lines.size() % 6 == 4) {
+			int sizeBefore = segment.neighbours.size();
+			ContactGraph.parseRecordNums(line, segment.neighbours);
+			segment.degrees.add(segment.neighbours.size() - sizeBefore);
+		}
+		segment.lines.add(line);
+	}
+
+	/**
+	 * Joins the segments, in file order, into one list of lines and one contact
+	 * graph.
+	 */
+	private static LoadedDatabase combine(List<Segment> segments) {
+		int numLines = 0;
+		int numRecords = 0;
+		int numNeighbours = 0;
+		for (Segment segment : segments) {
+			numLines += segment.lines.size();
+			numRecords += segment.degrees.size();
+			numNeighbours += segment.neighbours.size();
+		}
+
+		LoadedDatabase database = new LoadedDatabase();
+		database.lines = new ArrayList<>(numLines);
+		database.graphOffsets = new int[numRecords + 1];
+		database.graphNeighbours = new int[numNeighbours];
+
+		int record = 0;
+		for (Segment segment : segments) {
+			database.lines.addAll(segment.lines);
+
+			int offset = database.graphOffsets[record];
+			for (int i = 0; i < segment.neighbours.size(); i++) {
+				database.graphNeighbours[offset + i] = segment.neighbours.get(i);
+			}
+			for (int i = 0; i < segment.degrees.size(); i++) {
+				database.graphOffsets[record + 1] = database.graphOffsets[record] + segment.degrees.get(i);
+				record++;
+			}
+		}
+		return database;
+	}
+
+	/**
+	 * Waits for every task and returns their results in order.
+	 */
+	private static <T> List<T> getAll(List<Future<T>> futures) throws IOException {
+		List<T> results = new ArrayList<>(futures.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading the database", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Could not load the database", e.getCause());
+		}
+		return results;
+	}
+}
@@ -0,0 +1,146 @@
+package application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Simulates a cache of decoded records, so showing a user's test status,
+ * exposure status and interactions again does not read and parse their lines
+ * every time. Records are kept by record line number, and a record is removed
+ * from the cache whenever one of its lines changes. The cache can be used by
+ * several sessions at the same time.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class RecordCache {
+	private Map<Integer, CachedRecord> records;
+	private long numHits; // reads answered from the cache
+	private long numMisses; // reads that had to decode the record
+
+	/**
+	 * Constructs a cache that holds at most the given number of records. When it
+	 * is full, the record read longest ago is dropped.
+	 *
+	 * @param maxRecords The largest number of records kept.
+	 */
+	public RecordCache(int maxRecords) {
+		records = new LinkedHashMap<Integer, CachedRecord>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CachedRecord> eldest) {
+				return size() > maxRecords;
+			}
+		};
+	}
+
+	/**
+	 * Stores the decoded test status, exposure level and interactions of one
+	 * record.
+	 */
+	public static class CachedRecord {
+		private String testStatus;
+		private int exposureLevel;
+		private String[] interactions;
+
+		/**
+		 * Constructs a decoded record.
+		 *
+		 * @param testStatus    The user's test status.
+		 * @param exposureLevel The user's exposure level, 0 if they have none.
+		 * @param interactions  The names of the user's interactions.
+		 */
+		public CachedRecord(String testStatus, int exposureLevel, String[] interactions) {
+			this.testStatus = testStatus;
+			this.exposureLevel = exposureLevel;
+			this.interactions = interactions;
+		}
+
+		/**
+		 * Gets the user's test status.
+		 *
+		 * @return The test status.
+		 */
+		public String getTestStatus() {
+			return testStatus;
+		}
+
+		/**
+		 * Gets the user's exposure level.
+		 *
+		 * @return The exposure level, 0 if the user has none.
+		 */
+		public int getExposureLevel() {
+			return exposureLevel;
+		}
+
+		/**
+		 * Gets the names of the user's interactions.
+		 *
+		 * @return A copy of the interaction names.
+		 */
+		public String[] getInteractions() {
+			return interactions.clone();
+		}
+	}
+
+	/**
+	 * Gets a record from the cache and counts the read as a hit or a miss.
+	 *
+	 * @param recLineNum The record line number of the record.
+	 * @return The cached record, or null if it is not cached.
+	 */
+	public synchronized CachedRecord get(int recLineNum) {
+		CachedRecord record = records.get(recLineNum);
+		if (record == null)
+			numMisses++;
+		else
+			numHits++;
+		return record;
+	}
+
+	/**
+	 * Adds a decoded record to the cache.
+	 *
+	 * @param recLineNum The record line number of the record.
+	 * @param record     The decoded record.
+	 */
+	public synchronized void put(int recLineNum, CachedRecord record) {
+		records.put(recLineNum, record);
+	}
+
+	/**
+	 * Removes a record from the cache because one of its lines changed.
+	 *
+	 * @param recLineNum The record line number of the record.
+	 */
+	public synchronized void invalidate(int recLineNum) {
+		records.remove(recLineNum);
+	}
+
+	/**
+	 * Removes every record from the cache, for example after records moved.
+	 */
+	public synchronized void clear() {
+		records.clear();
+	}
+
+	/**
+	 * Gets the number of reads answered from the cache.
+	 *
+	 * @return The number of hits.
+	 */
+	public synchronized long getHits() {
+		return numHits;
+	}
+
+	/**
+	 * Gets the number of reads that had to decode the record.
+	 *
+	 * @return The number of misses.
+	 */
+	public synchronized long getMisses() {
+		return numMisses;
+	}
+}
@@ -0,0 +1,202 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Simulates the locks that let several sessions share one database. There are
+ * three kinds of locks:
+ * <ul>
+ * <li>The structure lock is held for writing by changes that add, rename, merge
+ * or move records, because those change the indexes every lookup uses. Every
+ * other operation holds it for reading, so they can run at the same
+ * time.</li>
+ * <li>The writer lock is held by changes to existing records, so only one of
+ * them saves at a time.</li>
+ * <li>Record locks are striped: every record belongs to one of a fixed number
+ * of read/write locks. Reading a record holds its stripe for reading and
+ * changing it holds its stripe for writing, so reads of different users go on
+ * in parallel and only wait while a record in the same stripe is being
+ * written.</li>
+ * </ul>
+ * Changes to many records lock their stripes in increasing stripe order, and a
+ * read never holds more than one stripe, so the locks cannot deadlock.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class RecordLocks {
+	private static final int DEFAULT_NUM_STRIPES = 64;
+
+	private ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+	private ReentrantLock writerLock = new ReentrantLock();
+	private ReentrantReadWriteLock[] stripes;
+
+	/**
+	 * Constructs the locks with the default number of record lock stripes.
+	 */
+	public RecordLocks() {
+		this(DEFAULT_NUM_STRIPES);
+	}
+
+	/**
+	 * Constructs the locks with the given number of record lock stripes.
+	 *
+	 * @param numStripes The number of record lock stripes, rounded up to a power
+	 *                   of two.
+	 */
+	public RecordLocks(int numStripes) {
+		if (numStripes < 1)
+			throw new IllegalArgumentException("There must be at least one stripe");
+
+		// a power of two, so the stripe of a record is found with a mask
+		int size = 1;
+		while (size < numStripes) {
+			size *= 2;
+		}
+
+		stripes = new ReentrantReadWriteLock[size];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	/**
+	 * Locks the structure for reading, so records are not added, merged or moved
+	 * until unlockShared() is called.
+	 */
+	public void lockShared() {
+		structureLock.readLock().lock();
+	}
+
+	/**
+	 * Unlocks the structure after lockShared().
+	 */
+	public void unlockShared() {
+		structureLock.readLock().unlock();
+	}
+
+	/**
+	 * Locks the structure for writing, waiting until no other operation is
+	 * running, so records can be added, merged or moved.
+	 */
+	public void lockStructure() {
+		structureLock.writeLock().lock();
+	}
+
+	/**
+	 * Unlocks the structure after lockStructure().
+	 */
+	public void unlockStructure() {
+		structureLock.writeLock().unlock();
+	}
+
+	/**
+	 * Checks if the calling thread may add, merge or move records, because it
+	 * holds the structure lock for writing or no session is using the database at
+	 * all.
+	 *
+	 * @return True if records can be moved without another session noticing.
+	 */
+	public boolean canChangeStructure() {
+		return structureLock.isWriteLockedByCurrentThread()
+				|| (!structureLock.isWriteLocked() && structureLock.getReadLockCount() == 0);
+	}
+
+	/**
+	 * Locks the writer lock, so no other change to existing records runs until
+	 * unlockWriter() is called.
+	 */
+	public void lockWriter() {
+		writerLock.lock();
+	}
+
+	/**
+	 * Unlocks the writer lock after lockWriter().
+	 */
+	public void unlockWriter() {
+		writerLock.unlock();
+	}
+
+	/**
+	 * Locks a record for reading.
+	 *
+	 * @param record The record number of the record.
+	 */
+	public void lockRecordForReading(int record) {
+		stripes[stripeOf(record)].readLock().lock();
+	}
+
+	/**
+	 * Unlocks a record after lockRecordForReading().
+	 *
+	 * @param record The record number of the record.
+	 */
+	public void unlockRecordForReading(int record) {
+		stripes[stripeOf(record)].readLock().unlock();
+	}
+
+	/**
+	 * Locks a record for writing.
+	 *
+	 * @param record The record number of the record.
+	 */
+	public void lockRecord(int record) {
+		stripes[stripeOf(record)].writeLock().lock();
+	}
+
+	/**
+	 * Unlocks a record after lockRecord().
+	 *
+	 * @param record The record number of the record.
+	 */
+	public void unlockRecord(int record) {
+		stripes[stripeOf(record)].writeLock().unlock();
+	}
+
+	/**
+	 * Locks many records for writing, one stripe at a time in increasing stripe
+	 * order.
+	 *
+	 * @param records The record numbers of the records.
+	 * @return The stripes that were locked, to be passed to unlockRecords().
+	 */
+	public int[] lockRecords(Collection<Integer> records) {
+		// every stripe is only locked once, however many of the records it has
+		boolean[] needed = new boolean[stripes.length];
+		for (int record : records) {
+			needed[stripeOf(record)] = true;
+		}
+
+		int[] locked = new int[stripes.length];
+		int numLocked = 0;
+		for (int stripe = 0; stripe < stripes.length; stripe++) {
+			if (needed[stripe]) {
+				stripes[stripe].writeLock().lock();
+				locked[numLocked++] = stripe;
+			}
+		}
+		return Arrays.copyOf(locked, numLocked);
+	}
+
+	/**
+	 * Unlocks the stripes locked by lockRecords(), in reverse order.
+	 *
+	 * @param lockedStripes The stripes returned by lockRecords().
+	 */
+	public void unlockRecords(int[] lockedStripes) {
+		for (int i = lockedStripes.length - 1; i >= 0; i--) {
+			stripes[lockedStripes[i]].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the stripe a record belongs to. Neighbouring records belong to
+	 * different stripes.
+	 */
+	private int stripeOf(int record) {
+		return (record ^ (record >>> 16)) & (stripes.length - 1);
+	}
+}
@@ -3,10 +3,24 @@ package application;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 //NOTE: Database will be in the form
 //FirstName LastName|Street Address, City, State ZipCode
@@ -26,22 +40,187 @@ public class UserDb {
 	File databaseFile;
 	List<String> databaseLines; // all the lines of the database
 	int numRecords; // number of records in database
+	DatabaseJournal journal; // write-ahead log, null if journaling is off
+	Map<Integer, String> changedLines = new TreeMap<>(); // lines not yet saved
+	int checkpointThreshold = 10000; // journal size that triggers a checkpoint
+	UserIndex index = new UserIndex(); // name and name|address lookups
+	ContactGraph graph; // interactions between records as int arrays
+	Set<Integer> changedInteractionRecords = new TreeSet<>(); // records whose 5th line is only in graph
+	MappedRecordFile mappedFile; // binary record file, null if using the text file
+	int transactionDepth; // number of transactions currently open
+	int linesAtBegin; // number of lines when the outermost transaction began
+	Map<Integer, String> undoLines = new TreeMap<>(); // lines before the transaction
+	int numDeadRecords; // number of cleared records still taking up space
+	double compactionThreshold = 0.25; // fraction of cleared records that triggers compaction
+	DatabaseWriter writer; // background thread saving changes, null if saving directly
+	boolean syncWrites; // true if every rewrite of the database file is synced to disk
+	static final int WRITE_BUFFER_SIZE = 1 << 20; // bytes buffered when rewriting the file
+	RecordCache cache = new RecordCache(10000); // decoded records, by record line number
+	RecordLocks locks = new RecordLocks(); // lets sessions share the database, see RecordLocks
 
 	/**
-	 * Constructs a user database with a given file path.
+	 * Constructs a user database with a given file path. Changes left in the
+	 * database's journal are applied and written back to the database file.
 	 * 
 	 * @param filePath Path to file.
 	 */
 	public UserDb(String filePath) {
+		this(filePath, false);
+	}
+
+	/**
+	 * Constructs a user database with a given file path. Changes left in the
+	 * database's journal are applied when the database is loaded.
+	 * 
+	 * @param filePath  Path to file.
+	 * @param journaled True if changes should be appended to a journal instead of
+	 *                  rewriting the entire database file after every change.
+	 */
+	public UserDb(String filePath, boolean journaled) {
 		databaseFile = new File(filePath);
+		ContactGraph loadedGraph = null;
 		try {
-			// read entire file and parse lines into ArrayList
-			databaseLines = Files.readAllLines(Paths.get(filePath));
+			// read entire file on several threads and parse lines into ArrayList
+			ParallelDatabaseLoader.LoadedDatabase loaded = new ParallelDatabaseLoader().load(filePath);
+			databaseLines = loaded.getLines();
+			loadedGraph = loaded.toContactGraph();
 		} catch (IOException e) {
 			e.printStackTrace();
+			databaseLines = new ArrayList<>();
+		}
+
+		// apply the changes that were journaled after the last checkpoint
+		DatabaseJournal existingJournal = new DatabaseJournal(databaseFile);
+		int numReplayed = existingJournal.replay(databaseLines);
+
+		if (journaled) {
+			journal = existingJournal;
+		} else if (numReplayed > 0) {
+			// if journaling is off, write the replayed changes to the database file and
+			// erase the journal, but only once the file is written
+			if (writeToDatabaseFile())
+				existingJournal.clear();
+		}
+
+		// the loaded graph is only up to date if the journal changed nothing
+		if (numReplayed > 0)
+			loadedGraph = null;
+		buildLookups(loadedGraph);
+	}
+
+	/**
+	 * Constructs a user database stored in a memory-mapped binary record file.
+	 * 
+	 * @param mappedFile The record file holding the database lines.
+	 */
+	private UserDb(MappedRecordFile mappedFile) {
+		this.mappedFile = mappedFile;
+		databaseLines = mappedFile;
+		buildLookups();
+	}
+
+	/**
+	 * Opens a user database stored in a memory-mapped binary record file instead
+	 * of a text file. Changes are written in place, so changing a test or exposure
+	 * status does not rewrite the file. Opening the record file only reads its
+	 * header, but the name indexes and the contact graph are still built by one
+	 * pass over every record, so opening the database still takes longer as it
+	 * grows.
+	 * <p>
+	 * Lines changed in place are written back to disk whenever the operating
+	 * system writes back the mapped pages, and are only certain to be on disk
+	 * after flush(), writeToDatabaseFile() or close(). Saving changes that add
+	 * records forces the file to disk before the new records are counted.
+	 * 
+	 * @param filePath Path to the record file. It is created if it does not exist.
+	 * @return The user database.
+	 * @throws IOException If the record file cannot be opened.
+	 */
+	public static UserDb openMapped(String filePath) throws IOException {
+		return new UserDb(new MappedRecordFile(filePath));
+	}
+
+	/**
+	 * Copies a text database file into a new binary record file.
+	 * 
+	 * @param textFilePath   Path to the text database file.
+	 * @param mappedFilePath Path to the record file to be created.
+	 * @throws IOException If either file cannot be read or written.
+	 */
+	public static void convertToMapped(String textFilePath, String mappedFilePath) throws IOException {
+		MappedRecordFile mappedFile = new MappedRecordFile(mappedFilePath);
+		mappedFile.addAll(new UserDb(textFilePath).databaseLines);
+		mappedFile.close();
+	}
+
+	/**
+	 * Counts the records and builds the indexes and contact graph from the
+	 * database lines.
+	 */
+	private void buildLookups() {
+		buildLookups(null);
+	}
+
+	/**
+	 * Counts the records and builds the indexes from the database lines, using a
+	 * contact graph that was already parsed if there is one.
+	 * 
+	 * @param loadedGraph The contact graph of the database lines, or null if it
+	 *                    should be built from the lines.
+	 */
+	private void buildLookups(ContactGraph loadedGraph) {
+		cache.clear();
+		numRecords = (databaseLines.size() + 5) / 6;
+		rebuildIndexes();
+		graph = loadedGraph != null ? loadedGraph : new ContactGraph(databaseLines);
+	}
+
+	/**
+	 * Rebuilds the name and name|address indexes from the database lines.
+	 */
+	public void rebuildIndexes() {
+		index.clear((databaseLines.size() + 5) / 6);
+		numDeadRecords = 0;
+		for (int lineNum = 0; lineNum < databaseLines.size(); lineNum += 6) {
+			String line = databaseLines.get(lineNum);
+			index.add(lineNum, line);
+
+			// count the records cleared by mergeRecords
+			if (line.equals(""))
+				numDeadRecords++;
 		}
 	}
 
+	/**
+	 * Gets the fraction of lookups for names that are not in the database which
+	 * still had to search the indexes because the Bloom filter could not rule
+	 * them out.
+	 * 
+	 * @return The measured false positive rate of the name filter.
+	 */
+	public double getNameFilterFalsePositiveRate() {
+		return index.getFilterFalsePositiveRate();
+	}
+
+	/**
+	 * Gets the fraction of lookups for names that are not in the database which
+	 * the Bloom filter is expected to let through, given its size and contents.
+	 * 
+	 * @return The expected false positive rate of the name filter.
+	 */
+	public double getNameFilterExpectedFalsePositiveRate() {
+		return index.getFilterExpectedFalsePositiveRate();
+	}
+
+	/**
+	 * Gets the graph of interactions between records.
+	 * 
+	 * @return The contact graph, with records numbered by record line number / 6.
+	 */
+	public ContactGraph getContactGraph() {
+		return graph;
+	}
+
 	/**
 	 * Searches for the given name.
 	 * 
@@ -91,11 +270,11 @@ public class UserDb {
 		String userInfo = user.toString();
 
 		// add the user's name and address to database ArrayList
-		databaseLines.add(userInfo);
+		addLine(userInfo);
 
 		// add test status to database
 		testStatus = testStatus.toUpperCase();
-		databaseLines.add(testStatus);
+		addLine(testStatus);
 
 		// since interactions passed in is in the format firstName lastName, firstName
 		// lastName, firstName lastName, etc.
@@ -107,17 +286,28 @@ public class UserDb {
 		interactions = interactions.replace(",", "|");
 
 		// add empty string for exposure status
-		databaseLines.add("");
+		addLine("");
 
 		// add interactions
-		databaseLines.add(interactions + "|");
+		addLine(interactions + "|");
 
 		// add empty string for interaction nums since there are none when creating a
 		// new user
-		databaseLines.add("");
+		addLine("");
 
 		// add empty line between records
-		databaseLines.add("");
+		addLine("");
+
+		numRecords++;
+		graph.addRecord();
+
+		// if journaling is on, the database is a record file, changes are saved in
+		// the background, or a transaction is open, the new record is saved the same
+		// way as any other change
+		if (journal != null || mappedFile != null || writer != null || transactionDepth > 0) {
+			saveChanges();
+			return newUserRecNum;
+		}
 
 		try {
 			// Append to file
@@ -126,12 +316,12 @@ public class UserDb {
 			fw.write(userInfo + "\n");
 			fw.write(testStatus + "\n");
 			fw.write("\n"); // have empty line for exposure status
-			fw.write(interactions + "\n");
+			fw.write(interactions + "|\n");
 			fw.write("\n"); // have empty line for interaction record numbers
 			fw.write("\n"); // have empty line between records
 			fw.close();
 
-			numRecords++;
+			changedLines.clear();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -154,15 +344,15 @@ public class UserDb {
 
 		// ewwrite user info (name and address)
 		String userInfo = user.toString();
-		databaseLines.set(recordLineNum, userInfo); // overwrite user info.
+		setLine(recordLineNum, userInfo); // overwrite user info.
 
 		// rewrite test status
 		testStatus = testStatus.toUpperCase();
-		databaseLines.set(recordLineNum + 1, testStatus);
+		setLine(recordLineNum + 1, testStatus);
 
 		// rewrite exposure status
 		exposureLevel = exposureLevel.toUpperCase();
-		databaseLines.set(recordLineNum + 2, exposureLevel);
+		setLine(recordLineNum + 2, exposureLevel);
 
 		// append interactions
 		interactions = interactions.replace(" ,", "|");
@@ -178,11 +368,11 @@ public class UserDb {
 		// if the interaction line is not empty, concatenate interactions with current
 		// interactions and write to database
 		if (!interactions.equals("")) {
-			databaseLines.set(recordLineNum + 3, currentInteractions + interactions + "|");
+			setLine(recordLineNum + 3, currentInteractions + interactions + "|");
 		}
 
 		// write changes to database
-		writeToDatabaseFile();
+		saveChanges();
 	}
 
 	/**
@@ -218,10 +408,10 @@ public class UserDb {
 		String currentLine = databaseLines.get(interactionRecNum);
 
 		// concatenate the interactions with the user's current interactions
-		databaseLines.set(interactionRecNum, currentLine + interactions.toUpperCase() + "|");
+		setLine(interactionRecNum, currentLine + interactions.toUpperCase() + "|");
 
 		// rewrite the database file
-		writeToDatabaseFile();
+		saveChanges();
 	}
 
 	/**
@@ -236,10 +426,26 @@ public class UserDb {
 		int testStatLine = getTestStatLineNum(user);
 
 		// change the status to the status passed into writeTestStatus
-		databaseLines.set(testStatLine, status.toUpperCase());
+		setLine(testStatLine, status.toUpperCase());
+
+		// rewrite database file
+		saveChanges();
+	}
+
+	/**
+	 * Updates the user's Covid test status in the database.
+	 * 
+	 * @param recLineNum The record line number of the user whose test status will
+	 *                   be updated.
+	 * @param status     The user's Covid test status.
+	 */
+	public void writeTestStatus(int recLineNum, String status) {
+
+		// change the status to the status passed into writeTestStatus
+		setLine(getTestStatLineNum(recLineNum), status.toUpperCase());
 
 		// rewrite database file
-		writeToDatabaseFile();
+		saveChanges();
 	}
 
 	/**
@@ -269,16 +475,16 @@ public class UserDb {
 
 		// if the user's exposureLevel is 0, erase entire line
 		if (exposureLevel == 0)
-			databaseLines.set(exposureStatLine, "");
+			setLine(exposureStatLine, "");
 
 		// if the exposureLevel is more severe than the current one the user has, update
 		// it to exposureLevel
 		else {
-			databaseLines.set(exposureStatLine, new Integer(exposureLevel).toString());
+			setLine(exposureStatLine, new Integer(exposureLevel).toString());
 		}
 
 		// rewrite database file
-		writeToDatabaseFile();
+		saveChanges();
 	}
 
 	/**
@@ -291,6 +497,100 @@ public class UserDb {
 	 */
 	public void writeExposureStatus(int userLineNum, int exposureLevel) {
 
+		// if the exposure status changed, rewrite database file
+		if (setExposureStatus(userLineNum, exposureLevel))
+			saveChanges();
+	}
+
+	/**
+	 * Writes the exposure statuses of many records at once and saves them in a
+	 * single write.
+	 * 
+	 * @param exposureLevels Map of record line numbers to the exposure level to be
+	 *                       written into that record.
+	 * @return The number of records whose exposure status changed.
+	 */
+	public int writeExposureStatuses(Map<Integer, Integer> exposureLevels) {
+		int numChanged = 0;
+
+		// update every record, only keeping the more severe exposure level. Readers
+		// see either none or all of the changes to the records
+		int[] lockedStripes = locks.lockRecords(recordNums(exposureLevels.keySet()));
+		try {
+			for (Map.Entry<Integer, Integer> entry : exposureLevels.entrySet()) {
+				if (setExposureStatus(entry.getKey(), entry.getValue()))
+					numChanged++;
+			}
+		} finally {
+			locks.unlockRecords(lockedStripes);
+		}
+
+		// rewrite database file once for every change
+		if (numChanged > 0)
+			saveChanges();
+
+		return numChanged;
+	}
+
+	/**
+	 * Writes the exposure statuses of many records at once and saves them in a
+	 * single write. Unlike writeExposureStatuses(), the statuses are replaced even
+	 * if they become less severe, for example after a positive result was
+	 * withdrawn.
+	 * 
+	 * @param exposureLevels Map of record line numbers to the exposure level to be
+	 *                       written into that record, 0 to erase it.
+	 * @return The number of records whose exposure status changed.
+	 */
+	public int replaceExposureStatuses(Map<Integer, Integer> exposureLevels) {
+		int numChanged = 0;
+
+		int[] lockedStripes = locks.lockRecords(recordNums(exposureLevels.keySet()));
+		try {
+			for (Map.Entry<Integer, Integer> entry : exposureLevels.entrySet()) {
+				// exposure stat is 2 lines away from user record line number
+				int exposureStatLine = entry.getKey() + 2;
+
+				// if the exposureLevel is 0, erase entire line
+				String newLine = entry.getValue() == 0 ? "" : Integer.toString(entry.getValue());
+				if (!newLine.equals(databaseLines.get(exposureStatLine))) {
+					setLine(exposureStatLine, newLine);
+					numChanged++;
+				}
+			}
+		} finally {
+			locks.unlockRecords(lockedStripes);
+		}
+
+		// rewrite database file once for every change
+		if (numChanged > 0)
+			saveChanges();
+
+		return numChanged;
+	}
+
+	/**
+	 * Converts record line numbers into record numbers, for locking the records.
+	 */
+	private static List<Integer> recordNums(Collection<Integer> recLineNums) {
+		List<Integer> records = new ArrayList<>(recLineNums.size());
+		for (int recLineNum : recLineNums) {
+			records.add(recLineNum / 6);
+		}
+		return records;
+	}
+
+	/**
+	 * Changes the exposure status of a record if the given exposure level is more
+	 * severe than its current one, without saving the change.
+	 * 
+	 * @param userLineNum   The line number where the user's record start in the
+	 *                      database file.
+	 * @param exposureLevel The user's exposure level.
+	 * @return True if the exposure status changed.
+	 */
+	private boolean setExposureStatus(int userLineNum, int exposureLevel) {
+
 		// exposure stat is 2 lines away from user record line number
 		int exposureStatLine = userLineNum + 2;
 
@@ -304,22 +604,23 @@ public class UserDb {
 			// if the user's current exposure status is more severe than the exposureLevel,
 			// skip rest of method
 			if (currentExpStat <= exposureLevel) {
-				return;
+				return false;
 			}
 		}
 
 		// if the user's exposureLevel is 0, erase entire line
-		if (exposureLevel == 0)
-			databaseLines.set(exposureStatLine, "");
+		String newLine = "";
 
 		// if the exposureLevel is more severe than the current one the user has, update
 		// it to exposureLevel
-		else {
-			databaseLines.set(exposureStatLine, new Integer(exposureLevel).toString());
-		}
+		if (exposureLevel != 0)
+			newLine = Integer.toString(exposureLevel);
 
-		// rewrite database file
-		writeToDatabaseFile();
+		if (newLine.equals(currentLine))
+			return false;
+
+		setLine(exposureStatLine, newLine);
+		return true;
 	}
 
 	/**
@@ -335,16 +636,11 @@ public class UserDb {
 		// retrieve the interactions record line number
 		int interactRecordsLineNum = getInteractionsRecLineNum(user);
 
-		// retrieve the line that includes all of the user's interaction record line
-		// numbers
-		String currentLine = databaseLines.get(interactRecordsLineNum);
-
-		// concatenate interactionsLineNum to the existing interaction record line
-		// numbers
-		databaseLines.set(interactRecordsLineNum, currentLine + interactionsLineNum.toUpperCase() + "|");
+		// add interactionsLineNum to the existing interaction record line numbers
+		addInteractionRecords(interactRecordsLineNum, interactionsLineNum);
 
 		// rewrite the database file
-		writeToDatabaseFile();
+		saveChanges();
 	}
 
 	/**
@@ -359,16 +655,54 @@ public class UserDb {
 		// retrieve the interactions record line number
 		int interactRecordsLineNum = getInteractionsRecLineNum(lineNum);
 
-		// retrieve the line that includes all of the user's interaction record line
-		// numbers
-		String currentLine = databaseLines.get(interactRecordsLineNum);
-
-		// concatenate interactionsLineNum to the existing interaction record line
-		// numbers
-		databaseLines.set(interactRecordsLineNum, currentLine + interactionsLineNum.toUpperCase() + "|");
+		// add interactionsLineNum to the existing interaction record line numbers
+		addInteractionRecords(interactRecordsLineNum, interactionsLineNum);
 
 		// rewrite the database file
-		writeToDatabaseFile();
+		saveChanges();
+	}
+
+	/**
+	 * Adds interaction record line numbers to a record's int interaction list,
+	 * skipping ones the record already has. The 5th line of the record is only
+	 * rewritten from the list when the changes are saved, so adding to a long list
+	 * does not copy the line every time.
+	 * 
+	 * @param interactRecordsLineNum The line number of the record's interaction
+	 *                               record line numbers.
+	 * @param interactionsLineNum    Interaction record line numbers, separated by
+	 *                               a |, to be added.
+	 */
+	private void addInteractionRecords(int interactRecordsLineNum, String interactionsLineNum) {
+		int record = (interactRecordsLineNum - 4) / 6;
+		IntList interactionRecords = new IntList();
+		ContactGraph.parseRecordNums(interactionsLineNum, interactionRecords);
+
+		for (int i = 0; i < interactionRecords.size(); i++) {
+			if (graph.addNeighbour(record, interactionRecords.get(i)))
+				changedInteractionRecords.add(record);
+		}
+	}
+
+	/**
+	 * Rewrites the 5th line of every record whose interaction list changed since
+	 * the last save.
+	 */
+	private void writeChangedInteractionRecords() {
+		for (int record : changedInteractionRecords) {
+			setLine(record * 6 + 4, graph.rowToLine(record));
+		}
+		changedInteractionRecords.clear();
+	}
+
+	/**
+	 * Gets a record's interaction record line numbers as they are on the 5th line
+	 * of the record, including changes that are not saved yet.
+	 */
+	private String interactionsRecLine(int recLineNum) {
+		if (changedInteractionRecords.contains(recLineNum / 6))
+			return graph.rowToLine(recLineNum / 6);
+		return databaseLines.get(recLineNum + 4);
 	}
 
 	/**
@@ -383,8 +717,8 @@ public class UserDb {
 		int interactionsLineNum = getInteractionsLineNum(user);
 		String interactions = databaseLines.get(interactionsLineNum);
 
-		// Parse string into a String array, split where there is a |
-		return interactions.split(("\\|"));
+		// Parse string into a String array, split where there is a | without a regex
+		return FieldTokenizer.split(interactions, '|');
 	}
 
 	/**
@@ -399,8 +733,8 @@ public class UserDb {
 		int interactionsLineNum = getInteractionsLineNum(lineNum);
 		String interactions = databaseLines.get(interactionsLineNum);
 
-		// Parse string into a String array, split where there is a |
-		return interactions.split(("\\|"));
+		// Parse string into a String array, split where there is a | without a regex
+		return FieldTokenizer.split(interactions, '|');
 	}
 
 	/**
@@ -420,14 +754,26 @@ public class UserDb {
 			// retrieve the interactions
 			String interactions = databaseLines.get(lineNum);
 
-			// Parse string into a String array, split where there is a |
-			// Add into ArrayList
-			listInteractions.add(interactions.split(("\\|")));
+			// Parse string into a String array, split where there is a | without a
+			// regex. Add into ArrayList
+			listInteractions.add(FieldTokenizer.split(interactions, '|'));
 		}
 
 		return listInteractions;
 	}
 
+	/**
+	 * Returns the first name in the user's interaction list without splitting the
+	 * rest of the list. For a record made from an interaction, this is the name of
+	 * the user who added it.
+	 * 
+	 * @param lineNum The line number of where the user's record begins.
+	 * @return The first name in the user's interaction list.
+	 */
+	public String readFirstInteraction(int lineNum) {
+		return FieldTokenizer.firstField(databaseLines.get(getInteractionsLineNum(lineNum)), '|');
+	}
+
 	/**
 	 * Read the user's exposure status.
 	 * 
@@ -459,10 +805,25 @@ public class UserDb {
 	public String[] readInteractionsRecLineNum(int userRecLineNum) {
 
 		// retrieves the user's interactions' record line numbers
-		String interactionsRecLineNum = databaseLines.get((userRecLineNum + 4));
+		String interactionsRecLineNum = interactionsRecLine(userRecLineNum);
 
-		// Parse string into a String array, split where there is a |
-		return interactionsRecLineNum.split(("\\|"));
+		// Parse string into a String array, split where there is a | without a regex
+		return FieldTokenizer.split(interactionsRecLineNum, '|');
+	}
+
+	/**
+	 * Read the record line number of the user's first interaction without
+	 * splitting the rest of the list.
+	 * 
+	 * @param userRecLineNum the user's record line number.
+	 * @return The record line number of the user's first interaction.
+	 * @throws NumberFormatException If the user has no interactions.
+	 */
+	public int readFirstInteractionRecLineNum(int userRecLineNum) {
+		String interactionsRecLineNum = interactionsRecLine(userRecLineNum);
+		int end = interactionsRecLineNum.indexOf('|');
+		return FieldTokenizer.parseInt(interactionsRecLineNum, 0,
+				end == -1 ? interactionsRecLineNum.length() : end);
 	}
 
 	/**
@@ -496,6 +857,66 @@ public class UserDb {
 		return databaseLines.get(testStatLine);
 	}
 
+	/**
+	 * Returns the user's test status, exposure level and interactions together,
+	 * from the record cache if the record has not changed since it was last read.
+	 * 
+	 * @param user The user whose record will be read.
+	 * @return The decoded record.
+	 * @throws IllegalArgumentException If the user is not registered.
+	 */
+	public RecordCache.CachedRecord readRecord(User user) {
+		int recLineNum = findRegisteredUser(user);
+		if (recLineNum == -1)
+			throw new IllegalArgumentException("User is not registered: " + user.getName());
+		return readRecord(recLineNum);
+	}
+
+	/**
+	 * Returns a record's test status, exposure level and interactions together,
+	 * from the record cache if the record has not changed since it was last read.
+	 * 
+	 * @param recLineNum The record line number of the record.
+	 * @return The decoded record.
+	 */
+	public RecordCache.CachedRecord readRecord(int recLineNum) {
+		// the record cannot change while it is decoded, so a decoded copy put in the
+		// cache is never out of date
+		locks.lockRecordForReading(recLineNum / 6);
+		try {
+			RecordCache.CachedRecord record = cache.get(recLineNum);
+			if (record == null) {
+				String exposureStat = readExposureStat(recLineNum);
+				record = new RecordCache.CachedRecord(readTestStatus(recLineNum),
+						exposureStat.equals("") ? 0 : Integer.parseInt(exposureStat), readInteractions(recLineNum));
+				cache.put(recLineNum, record);
+			}
+			return record;
+		} finally {
+			locks.unlockRecordForReading(recLineNum / 6);
+		}
+	}
+
+	/**
+	 * Gets the cache of decoded records, for example to check its hit and miss
+	 * counts.
+	 * 
+	 * @return The record cache.
+	 */
+	public RecordCache getRecordCache() {
+		return cache;
+	}
+
+	/**
+	 * Gets the locks that sessions sharing the database hold while they read and
+	 * change it.
+	 * 
+	 * @return The locks of the database.
+	 */
+	public RecordLocks getLocks() {
+		return locks;
+	}
+
 	/**
 	 * Searches for the given user with matching name.
 	 * 
@@ -504,21 +925,18 @@ public class UserDb {
 	 *         found.
 	 */
 	private int findUser(User user) {
-		int lineNum = 0;
-
-		// search through the database
-		while (lineNum < databaseLines.size()) {
-			String line = databaseLines.get(lineNum);
-
-			// if the user contains the user's name
-			if (line.contains(user.getName())) {
-				return lineNum;
-			}
-			lineNum++;
-		}
+		// look up the first record with the user's name
+		return index.findName(user.getName());
+	}
 
-		// if the user can't be found
-		return -1;
+	/**
+	 * Checks if a record was cleared, for example by mergeRecords.
+	 * 
+	 * @param recLineNum The record line number of the record.
+	 * @return True if the record no longer holds a user.
+	 */
+	public boolean isRecordCleared(int recLineNum) {
+		return databaseLines.get(recLineNum).equals("");
 	}
 
 	/**
@@ -537,21 +955,24 @@ public class UserDb {
 		if (line.equals(""))
 			return null;
 
-		// split the line retrieved
-		String[] nameAddress = line.split("\\|");
+		// read the name, the part before the |. The tokenizer is local because
+		// records are read by many threads at once
+		FieldTokenizer fields = new FieldTokenizer("|").reset(line);
+		fields.next();
+		String name = fields.field();
 
 		// if the line doesn't have an address
-		if (noAddress(line)) {
+		if (!fields.next() || fields.isFieldEmpty()) {
 
 			// return a User object with an empty address
-			return new User(nameAddress[0]);
+			return new User(name);
 		}
 
 		// if user has an address, create an new Address object
-		Address userAddress = new Address(nameAddress[1]);
+		Address userAddress = new Address(fields.field());
 
 		// return a new user object with name and address
-		return new User(nameAddress[0], userAddress);
+		return new User(name, userAddress);
 	}
 
 	/**
@@ -586,23 +1007,12 @@ public class UserDb {
 	 *         found.
 	 */
 	public int findRegisteredUser(User user) {
-		int lineNum = 0;
-
-		// go through each record in database
-		while (lineNum < databaseLines.size()) {
-
-			// retrieve the line at lineNum
-			String line = databaseLines.get(lineNum);
-
-			// if the line contains the user and the address of user Object
-			if (line.contains(user.getName()) && line.contains(user.getAddr().toString())) {
-				return lineNum;
-			}
+		// if the user has no address, any record with the user's name matches
+		if (user.getAddr().toString().equals(""))
+			return index.findName(user.getName());
 
-			// go to next record
-			lineNum += 6;
-		}
-		return -1;
+		// look up the record with the user's name and address
+		return index.findRegistered(UserIndex.registeredKey(user));
 	}
 
 	/**
@@ -616,24 +1026,33 @@ public class UserDb {
 	public ArrayList<Integer> findUnregisteredUser(User user) {
 
 		// Retrieve all line nums that store records that has interacted with the user
-		ArrayList<Integer> recordLines = new ArrayList<>();
-
-		// go through records in database
-		int lineNum = 0;
-		while (lineNum < databaseLines.size()) {
-			String line = databaseLines.get(lineNum);
-
-			// if the user contains a user with no address
-			if (line.contains(user.getName()) && (noAddress(line))) {
+		return new ArrayList<>(index.findPlaceholders(user.getName()));
+	}
 
-				// add the record line number to recordLines
-				recordLines.add(lineNum);
-			}
+	/**
+	 * Searches for the name of an existing record that the given name is most
+	 * likely a misspelling of.
+	 * 
+	 * @param name The name to be searched for.
+	 * @return The existing name, the name itself if a record has it, or null if no
+	 *         single name is close enough.
+	 */
+	public String findSimilarName(String name) {
+		return index.findSimilarName(name);
+	}
 
-			// go to the next record
-			lineNum += 6;
-		}
-		return recordLines;
+	/**
+	 * Searches for the name of an existing record that the given name is most
+	 * likely a misspelling of, never answering with the excluded name.
+	 * 
+	 * @param name         The name to be searched for.
+	 * @param excludedName A name that is never returned for a misspelling, for
+	 *                     example the user's own name.
+	 * @return The existing name, the name itself if a record has it, or null if no
+	 *         single other name is close enough.
+	 */
+	public String findSimilarName(String name, String excludedName) {
+		return index.findSimilarName(name, excludedName);
 	}
 
 	/**
@@ -649,20 +1068,524 @@ public class UserDb {
 
 	/**
 	 * Writes entire databaseLines ArrayList to database File
+	 * 
+	 * @return True if the database file was written.
+	 */
+	public boolean writeToDatabaseFile() {
+		// a record file is changed in place, so it only has to be written to disk
+		if (mappedFile != null) {
+			mappedFile.force();
+			return true;
+		}
+
+		// wait for the background writer so it does not write over this file
+		if (writer != null)
+			writer.flush();
+
+		return writeLines(databaseLines, false);
+	}
+
+	/**
+	 * Writes the given lines to the database file.
+	 * 
+	 * @param lines The lines of the database.
+	 * @param sync  True if the file should be synced to disk before returning.
+	 * @return True if the database file was replaced, false if it could not be
+	 *         written and the old file was kept.
 	 */
-	public void writeToDatabaseFile() {
+	private boolean writeLines(List<String> lines, boolean sync) {
 		try {
-			FileWriter fw = new FileWriter(databaseFile);
+			replaceDatabaseFile(lines, sync || syncWrites);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Sets whether every rewrite of the database file is synced to disk before
+	 * the new file replaces the old one. Checkpoints of the journal are always
+	 * synced.
+	 * 
+	 * @param syncWrites True if rewrites of the database file should be synced.
+	 */
+	public void setSyncWrites(boolean syncWrites) {
+		this.syncWrites = syncWrites;
+	}
+
+	/**
+	 * Saves a batch of changed lines, either by appending them to the journal or
+	 * by rewriting the database file. Called directly by saveChanges(), or by the
+	 * background writer with its own copy of the lines.
+	 * 
+	 * @param lines   All lines of the database, including the changed ones.
+	 * @param changes Map of line numbers to the new contents of those lines.
+	 * @param sync    True if the changes should be synced to disk before returning.
+	 */
+	void persistChanges(List<String> lines, Map<Integer, String> changes, boolean sync) {
+		// if journaling is off, rewrite the database file
+		if (journal == null) {
+			writeLines(lines, sync);
+			return;
+		}
+
+		// append the changed lines to the journal
+		journal.append(changes, sync);
+
+		// if the journal has grown too large, write it into the database file. The
+		// journal is only erased after the database file is written, so a crash in
+		// between just replays the same changes again, and a file that could not be
+		// written is tried again at the next batch
+		if (journal.size() >= checkpointThreshold && writeLines(lines, true))
+			journal.clear();
+	}
+
+	/**
+	 * Changes a line in the database and remembers it so it is saved by the next
+	 * call to saveChanges().
+	 *
+	 * @param lineNum The line number of the line to be changed.
+	 * @param line    The new contents of the line.
+	 */
+	private void setLine(int lineNum, String line) {
+		// remember the line's original contents in case the transaction is rolled back
+		if (transactionDepth > 0 && lineNum < linesAtBegin && !undoLines.containsKey(lineNum))
+			undoLines.put(lineNum, databaseLines.get(lineNum));
+
+		// if the first line of a record changes, move the record in the indexes
+		if (lineNum % 6 == 0) {
+			String previous = databaseLines.get(lineNum);
+			index.remove(lineNum, previous);
+			index.add(lineNum, line);
+
+			// keep count of cleared records
+			if (line.equals("") && !previous.equals(""))
+				numDeadRecords++;
+			else if (!line.equals("") && previous.equals(""))
+				numDeadRecords--;
+		}
+
+		changedLines.put(lineNum, line);
+
+		// readers of the record wait until the line is changed and its decoded copy,
+		// which is now out of date, is removed
+		locks.lockRecord(lineNum / 6);
+		try {
+			databaseLines.set(lineNum, line);
+			cache.invalidate(lineNum - lineNum % 6);
+		} finally {
+			locks.unlockRecord(lineNum / 6);
+		}
+	}
+
+	/**
+	 * Adds a line to the end of the database and remembers it so it is saved by
+	 * the next call to saveChanges().
+	 *
+	 * @param line The contents of the new line.
+	 */
+	private void addLine(String line) {
+		// if the line starts a new record, add the record to the indexes
+		if (databaseLines.size() % 6 == 0)
+			index.add(databaseLines.size(), line);
+
+		changedLines.put(databaseLines.size(), line);
+		databaseLines.add(line);
+	}
+
+	/**
+	 * Saves the lines changed since the last save. If journaling is on, only the
+	 * changed lines are appended to the journal. If the database is a record file,
+	 * the lines were already changed in place. Otherwise the entire database file
+	 * is rewritten.
+	 */
+	private void saveChanges() {
+		// changes made in a transaction are saved when the transaction is committed
+		if (transactionDepth > 0)
+			return;
+
+		// turn the changed interaction lists back into lines
+		writeChangedInteractionRecords();
+
+		// a record file was already changed in place, and only new records have to
+		// be forced to disk before the header counts them. Changed statuses are
+		// forced by flush() or close(), since forcing writes back the whole mapping
+		if (mappedFile != null) {
+			mappedFile.publishLines();
+			changedLines.clear();
+			return;
+		}
+
+		// hand the changes to the background writer without waiting for the disk
+		if (writer != null) {
+			writer.submit(new TreeMap<>(changedLines));
+			changedLines.clear();
+			return;
+		}
+
+		persistChanges(databaseLines, changedLines, false);
+		changedLines.clear();
+	}
+
+	/**
+	 * Saves changes on a background thread from now on, so changing the database
+	 * does not wait for the disk.
+	 * 
+	 * @param policy         When saved changes are written and synced to disk.
+	 * @param intervalMillis Milliseconds between writes for the INTERVAL policy.
+	 */
+	public void enableAsyncWrites(DatabaseWriter.DurabilityPolicy policy, long intervalMillis) {
+		if (mappedFile != null)
+			throw new UnsupportedOperationException("Record files are already changed in place");
+
+		if (writer != null)
+			writer.close();
+		writer = new DatabaseWriter(this, databaseLines, policy, intervalMillis);
+	}
+
+	/**
+	 * Waits until every saved change is written and synced to disk. Only needed
+	 * when changes are saved on a background thread, or to force the changes
+	 * written in place in a record file.
+	 */
+	public void flush() {
+		if (writer != null)
+			writer.flush();
+		else if (mappedFile != null)
+			mappedFile.force();
+	}
+
+	/**
+	 * Starts a transaction. Changes made until the matching commitTransaction() are
+	 * kept in memory and saved together in a single write. Transactions can be
+	 * nested; only the outermost commit saves the changes.
+	 */
+	public void beginTransaction() {
+		if (transactionDepth == 0) {
+			linesAtBegin = databaseLines.size();
+			undoLines.clear();
+		}
+		transactionDepth++;
+	}
 
-			// loop through array and print line onto file
-			for (String line : databaseLines) {
-				fw.write(line + "\n");
+	/**
+	 * Ends a transaction. If it is the outermost transaction, all changes made
+	 * since beginTransaction() are saved in a single write.
+	 */
+	public void commitTransaction() {
+		if (transactionDepth == 0)
+			throw new IllegalStateException("No transaction to commit");
+
+		transactionDepth--;
+		if (transactionDepth == 0) {
+			undoLines.clear();
+			saveChanges();
+
+			// no one holds record line numbers between transactions, so this is when
+			// records can safely be moved, unless other sessions are using them
+			if (needsCompaction() && locks.canChangeStructure())
+				compact();
+		}
+	}
+
+	/**
+	 * Ends the outermost transaction and undoes every change made since it began,
+	 * so none of them are saved.
+	 */
+	public void rollbackTransaction() {
+		if (transactionDepth == 0)
+			throw new IllegalStateException("No transaction to roll back");
+		transactionDepth = 0;
+
+		// the indexes and graph only have to be built again if records were added,
+		// renamed or given new interactions
+		boolean structureChanged = databaseLines.size() > linesAtBegin || !changedInteractionRecords.isEmpty();
+		for (int lineNum : undoLines.keySet()) {
+			if (lineNum % 6 == 0 || lineNum % 6 == 4)
+				structureChanged = true;
+		}
+
+		// remove the lines added during the transaction and restore the changed ones
+		databaseLines.subList(linesAtBegin, databaseLines.size()).clear();
+		int[] lockedStripes = locks.lockRecords(recordNums(undoLines.keySet()));
+		try {
+			for (Map.Entry<Integer, String> entry : undoLines.entrySet()) {
+				databaseLines.set(entry.getKey(), entry.getValue());
+				cache.invalidate(entry.getKey() - entry.getKey() % 6);
 			}
-			fw.close();
+		} finally {
+			locks.unlockRecords(lockedStripes);
+		}
+		undoLines.clear();
+		changedLines.clear();
+		changedInteractionRecords.clear();
+
+		if (structureChanged)
+			buildLookups();
+	}
+
+	/**
+	 * Checks if a transaction is open.
+	 * 
+	 * @return True if changes are currently being held until a commit.
+	 */
+	public boolean inTransaction() {
+		return transactionDepth > 0;
+	}
+
+	/**
+	 * Checks if cleared records take up enough of the database to compact it.
+	 * 
+	 * @return True if the fraction of cleared records passed the threshold.
+	 */
+	public boolean needsCompaction() {
+		return mappedFile == null && numDeadRecords >= 16
+				&& numDeadRecords >= compactionThreshold * ((databaseLines.size() + 5) / 6);
+	}
+
+	/**
+	 * Sets the fraction of cleared records that makes the database compact itself
+	 * after a transaction.
+	 * 
+	 * @param compactionThreshold Fraction of cleared records, from 0 to 1.
+	 */
+	public void setCompactionThreshold(double compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Removes cleared records from the database. Every record after a cleared
+	 * record moves up, so the interaction record line numbers of every record are
+	 * changed to the new positions. The compacted database is written to a
+	 * temporary file that then replaces the database file.
+	 * 
+	 * @return The number of cleared records removed.
+	 */
+	public int compact() {
+		// records move, so no other session may use the database meanwhile
+		locks.lockStructure();
+		try {
+			return compactRecords();
+		} finally {
+			locks.unlockStructure();
+		}
+	}
+
+	/**
+	 * Removes cleared records after the structure was locked.
+	 * 
+	 * @return The number of cleared records removed.
+	 */
+	private int compactRecords() {
+		if (transactionDepth > 0)
+			throw new IllegalStateException("Cannot compact the database during a transaction");
+		if (mappedFile != null)
+			throw new UnsupportedOperationException("Record files cannot be compacted");
+
+		// write journaled changes first so the journal never refers to old positions.
+		// If they cannot be written, the records stay where the journal expects them
+		if (journal != null && !checkpoint())
+			return 0;
+		if (writer != null)
+			writer.flush();
+
+		// find the new record line number of every record, -1 if it is removed
+		int numOldRecords = (databaseLines.size() + 5) / 6;
+		int[] newLineNums = new int[numOldRecords];
+		int numLines = 0;
+		for (int record = 0; record < numOldRecords; record++) {
+			if (databaseLines.get(record * 6).equals("")) {
+				newLineNums[record] = -1;
+			} else {
+				newLineNums[record] = numLines;
+				numLines += 6;
+			}
+		}
+
+		// copy the remaining records, changing their interaction record line numbers
+		List<String> compactedLines = new ArrayList<>(numLines);
+		IntList interactionRecords = new IntList();
+		for (int record = 0; record < numOldRecords; record++) {
+			if (newLineNums[record] == -1)
+				continue;
+
+			int lineNum = record * 6;
+			for (int field = 0; field < 4; field++) {
+				compactedLines.add(lineAt(lineNum + field));
+			}
+
+			interactionRecords.clear();
+			graph.copyNeighbours(record, interactionRecords);
+			StringBuilder interactionsRecLine = new StringBuilder();
+			for (int i = 0; i < interactionRecords.size(); i++) {
+				int interactionRecord = interactionRecords.get(i);
+				if (interactionRecord < numOldRecords && newLineNums[interactionRecord] != -1)
+					interactionsRecLine.append(newLineNums[interactionRecord]).append('|');
+			}
+			compactedLines.add(interactionsRecLine.toString());
+			compactedLines.add("");
+		}
+
+		int numRemoved = numOldRecords - numLines / 6;
+		try {
+			replaceDatabaseFile(compactedLines, syncWrites);
 		} catch (IOException e) {
+			// keep using the uncompacted database if the new file could not be written
 			e.printStackTrace();
+			return 0;
+		}
+
+		databaseLines = compactedLines;
+		changedLines.clear();
+		buildLookups();
+
+		// the background writer now has to start from the compacted lines
+		if (writer != null)
+			writer.reset(compactedLines);
+		return numRemoved;
+	}
+
+	/**
+	 * Gets a line of the database, or an empty string past the end of the file.
+	 */
+	private String lineAt(int lineNum) {
+		return lineNum < databaseLines.size() ? databaseLines.get(lineNum) : "";
+	}
+
+	/**
+	 * Writes the given lines to a temporary file and moves it over the database
+	 * file, so the database file is never left half written.
+	 * 
+	 * @param lines The lines of the new database file.
+	 * @param sync  True if the temporary file should be synced to disk before it
+	 *              replaces the database file.
+	 * @throws IOException If the file cannot be written or moved.
+	 */
+	private void replaceDatabaseFile(List<String> lines, boolean sync) throws IOException {
+		Path target = databaseFile.getAbsoluteFile().toPath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+		try {
+			// write the lines through a large buffer instead of one write per line
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+				for (String line : lines) {
+					byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+
+					// if the buffer is full, write it to the file
+					if (bytes.length > buffer.remaining())
+						writeBuffer(channel, buffer);
+
+					// a line longer than the whole buffer is written on its own
+					if (bytes.length > buffer.capacity()) {
+						ByteBuffer longLine = ByteBuffer.wrap(bytes);
+						while (longLine.hasRemaining()) {
+							channel.write(longLine);
+						}
+					} else {
+						buffer.put(bytes);
+					}
+				}
+				writeBuffer(channel, buffer);
+
+				if (sync)
+					channel.force(true);
+			}
+
+			try {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			// a temporary file that did not replace the database file is only in the way
+			// of the next write
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException deleteFailure) {
+				e.addSuppressed(deleteFailure);
+			}
+			throw e;
+		}
+
+		// sync the directory so the rename itself survives a crash
+		if (sync) {
+			try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+				directory.force(true);
+			} catch (IOException e) {
+				// some systems cannot open directories; the file itself is synced
+			}
+		}
+	}
+
+	/**
+	 * Writes everything in the buffer to the channel and empties the buffer.
+	 */
+	private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes all journaled changes into the database file and erases the journal.
+	 * 
+	 * @return True if the database file was written, false if it could not be and
+	 *         the journal was kept.
+	 */
+	public boolean checkpoint() {
+		// the database file is synced before the journal is erased
+		if (writer != null)
+			writer.flush();
+		if (!writeLines(databaseLines, true))
+			return false;
+
+		// the journal is only erased after the database file is written, so a crash
+		// in between just replays the same changes again
+		if (journal != null)
+			journal.clear();
+		return true;
+	}
+
+	/**
+	 * Sets how many journaled lines are allowed before the journal is written into
+	 * the database file.
+	 *
+	 * @param checkpointThreshold The number of journaled lines that triggers a
+	 *                            checkpoint.
+	 */
+	public void setCheckpointThreshold(int checkpointThreshold) {
+		this.checkpointThreshold = checkpointThreshold;
+	}
+
+	/**
+	 * Saves all changes into the database file. Should be called before the
+	 * program exits.
+	 */
+	public void close() {
+		// write every change still waiting in the background writer
+		if (writer != null) {
+			try {
+				writer.close();
+			} finally {
+				writer = null;
+			}
 		}
 
+		if (journal != null)
+			checkpoint();
+
+		if (mappedFile != null) {
+			try {
+				mappedFile.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 	/**
@@ -674,43 +1597,112 @@ public class UserDb {
 	 *                    and cleared.
 	 */
 	public void mergeRecords(int rec1LineNum, int rec2LineNum) {
+		List<Integer> mergedLineNums = new ArrayList<>(1);
+		mergedLineNums.add(rec2LineNum);
+		mergeRecords(rec1LineNum, mergedLineNums);
+	}
 
-		// read exposure status of both records
-		String expStat1 = readExposureStat(rec1LineNum);
-		String expStat2 = readExposureStat(rec2LineNum);
-
-		// if the second record's exposure status is not empty
-		if (!expStat2.equals("")) {
-			// and the first exposure status is empty, write the exposure status of the
-			// second record to the first one. Or, if the second and first record's exposure
-			// status are both not empty and the second record's exposure status is less
-			// than than the first one, write the second exposure status to the first record
-			if (expStat1.equals("") || Integer.parseInt(expStat2) < Integer.parseInt(expStat1)) {
-				writeExposureStatus(rec1LineNum, Integer.parseInt(expStat2));
-			}
+	/**
+	 * Merges many records into one in a single pass and saves the result in one
+	 * write. The surviving record gets the most severe exposure status of all of
+	 * them and every interaction any of them had, and every interaction that
+	 * pointed at a merged record points at the surviving record instead. The
+	 * merged records are cleared.
+	 * 
+	 * @param survivorLineNum The record line number of the record the others will
+	 *                        merge to.
+	 * @param mergedLineNums  The record line numbers of the records that will be
+	 *                        merged and cleared.
+	 */
+	public void mergeRecords(int survivorLineNum, List<Integer> mergedLineNums) {
+		int survivor = survivorLineNum / 6;
+
+		// every merged record is replaced by the surviving record, so a merged record
+		// only has to be looked up in this set to find what replaces it
+		Set<Integer> merged = new LinkedHashSet<>();
+		for (int recLineNum : mergedLineNums) {
+			if (recLineNum != survivorLineNum)
+				merged.add(recLineNum / 6);
+		}
+		if (merged.isEmpty())
+			return;
+
+		// lock every record the merge changes at once, in stripe order
+		List<Integer> changedRecords = new ArrayList<>(merged);
+		changedRecords.add(survivor);
+		IntList neighbours = new IntList();
+		for (int record : merged) {
+			graph.copyNeighbours(record, neighbours);
+		}
+		for (int i = 0; i < neighbours.size(); i++) {
+			changedRecords.add(neighbours.get(i));
+		}
+		int[] lockedStripes = locks.lockRecords(changedRecords);
+		try {
+			mergeLockedRecords(survivorLineNum, merged);
+		} finally {
+			locks.unlockRecords(lockedStripes);
 		}
 
-		// write interaction from rec2 into rec1
-		String[] rec2Interactions = readInteractions(rec2LineNum); // get rec2 interactions
-		writeInteractions(rec1LineNum, rec2Interactions[0]); // write rec2 interactions to rec1
+		// rewrite database file once for every merged record
+		saveChanges();
+	}
 
-		// write interactionLineNum from rec2 into rec1
-		String[] rec2InteractionsLineNum = readInteractionsRecLineNum(rec2LineNum);
-		writeInteractionsRecLineNum(rec1LineNum, rec2InteractionsLineNum[0]);
+	/**
+	 * Merges records into one after they were locked.
+	 * 
+	 * @param survivorLineNum The record line number of the record the others will
+	 *                        merge to.
+	 * @param merged          The record numbers of the records that will be merged
+	 *                        and cleared.
+	 */
+	private void mergeLockedRecords(int survivorLineNum, Set<Integer> merged) {
+		int survivor = survivorLineNum / 6;
+
+		// interaction names the surviving record already has
+		String survivorNames = databaseLines.get(survivorLineNum + 3);
+		Set<String> names = new HashSet<>(Arrays.asList(FieldTokenizer.split(survivorNames, '|')));
+		StringBuilder newNames = new StringBuilder(survivorNames);
+
+		IntList neighbours = new IntList();
+		for (int record : merged) {
+			// keep the most severe exposure status, unless the surviving user tested
+			// positive and so has none
+			String exposureStat = readExposureStat(record * 6);
+			if (!exposureStat.equals("") && !readTestStatus(survivorLineNum).equals("TESTED POSITIVE"))
+				setExposureStatus(survivorLineNum, Integer.parseInt(exposureStat));
+
+			// add the interaction names the surviving record does not have yet
+			for (String name : readInteractions(record * 6)) {
+				if (!name.equals("") && names.add(name))
+					newNames.append(name).append('|');
+			}
 
-		// get the record line number of the only interaction of the second empty record
-		int interactRecNum2 = Integer.parseInt(rec2InteractionsLineNum[0]);
+			// move every interaction to the surviving record, and replace the merged record
+			// in the interactions of the other side. Whole record numbers are compared, so
+			// 12 does not match inside 120
+			neighbours.clear();
+			graph.copyNeighbours(record, neighbours);
+			for (int i = 0; i < neighbours.size(); i++) {
+				int neighbour = neighbours.get(i);
+				if (neighbour == survivor || merged.contains(neighbour))
+					continue;
+
+				if (graph.addNeighbour(survivor, neighbour))
+					changedInteractionRecords.add(survivor);
+				if (graph.replaceNeighbour(neighbour, record, survivor))
+					changedInteractionRecords.add(neighbour);
+			}
 
-		// read the record line numbers of the interactions of the original record (who
-		// created the second empty record)
-		String interactRecNum = databaseLines.get(interactRecNum2 + 4);
+			// the surviving record cannot interact with itself
+			if (graph.removeNeighbour(survivor, record))
+				changedInteractionRecords.add(survivor);
 
-		// replace the empty record's line number with the merged record line number
-		interactRecNum = interactRecNum.replace("" + rec2LineNum, "" + rec1LineNum);
-		databaseLines.set(interactRecNum2 + 4, interactRecNum);
+			clearRecordLines(record * 6);
+		}
 
-		// clear second record
-		clearRecord(rec2LineNum);
+		if (newNames.length() != survivorNames.length())
+			setLine(survivorLineNum + 3, newNames.toString());
 	}
 
 	/**
@@ -719,15 +1711,26 @@ public class UserDb {
 	 * @param recLineNum The record line number of record that will be cleared.
 	 */
 	public void clearRecord(int recLineNum) {
-		// set all portions of the record to empty strings
-		databaseLines.set(recLineNum, "");
-		databaseLines.set(recLineNum + 1, "");
-		databaseLines.set(recLineNum + 2, "");
-		databaseLines.set(recLineNum + 3, "");
-		databaseLines.set(recLineNum + 4, "");
+		clearRecordLines(recLineNum);
 
 		// rewrite database file
-		writeToDatabaseFile();
+		saveChanges();
+	}
+
+	/**
+	 * Clears the record without saving the change.
+	 * 
+	 * @param recLineNum The record line number of record that will be cleared.
+	 */
+	private void clearRecordLines(int recLineNum) {
+		// set all portions of the record to empty strings
+		setLine(recLineNum, "");
+		setLine(recLineNum + 1, "");
+		setLine(recLineNum + 2, "");
+		setLine(recLineNum + 3, "");
+		setLine(recLineNum + 4, "");
+		graph.setNeighbours(recLineNum / 6, "");
+		changedInteractionRecords.remove(recLineNum / 6);
 	}
 
 	/**
@@ -0,0 +1,354 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates the in-memory indexes of the user database so records can be found
+ * by name, or by name and address, without searching through the entire
+ * database.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UserIndex {
+	// canonical name -> record line numbers of every record with that name
+	private Map<String, List<Integer>> nameIndex = new HashMap<>();
+
+	// canonical name|address -> record line number of the registered record
+	private Map<String, Integer> registeredIndex = new HashMap<>();
+
+	// canonical name -> record line numbers of records with no address
+	private Map<String, List<Integer>> placeholderIndex = new HashMap<>();
+
+	// canonical names and name|address keys, so names that were never added can be
+	// rejected without looking them up
+	private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+	private BloomFilter filter = new BloomFilter(0, FILTER_FALSE_POSITIVE_RATE);
+	// counted by every session looking up names at the same time
+	private AtomicLong numFilterMisses = new AtomicLong(); // lookups rejected by the filter
+	private AtomicLong numFilterFalsePositives = new AtomicLong(); // lookups the filter passed that were not found
+
+	// canonical names that can be searched by edit distance, built on the first
+	// similar name lookup
+	private NameSimilarityIndex similarNames;
+	private static final int MIN_LENGTH_ONE_EDIT = 8; // shortest name matched with 1 edit
+	private static final int MIN_LENGTH_TWO_EDITS = 16; // shortest name matched with 2 edits
+
+	/**
+	 * Converts a name into the form used as an index key.
+	 *
+	 * @param name The name to be converted.
+	 * @return The trimmed, uppercase name.
+	 */
+	public static String canonicalName(String name) {
+		return name.trim().toUpperCase();
+	}
+
+	/**
+	 * Converts a user into the name|address key of the registered index.
+	 *
+	 * @param user The user to be converted.
+	 * @return The user's canonical name and address separated by a |.
+	 */
+	public static String registeredKey(User user) {
+		return canonicalName(user.getName()) + "|" + user.getAddr();
+	}
+
+	/**
+	 * Adds a record to the indexes.
+	 *
+	 * @param recLineNum The record line number of the record.
+	 * @param line       The first line of the record (name|address).
+	 */
+	public void add(int recLineNum, String line) {
+		// cleared records are not indexed
+		if (line.equals(""))
+			return;
+
+		String name = nameOf(line);
+		addSorted(nameIndex, name, recLineNum);
+		filter.add(name);
+		if (similarNames != null)
+			similarNames.add(name);
+
+		// if the record has no address, it is a placeholder created from an
+		// interaction list
+		if (line.endsWith("|")) {
+			addSorted(placeholderIndex, name, recLineNum);
+		} else {
+			// keep the first registered record if the same user is somehow stored twice
+			String key = name + line.substring(line.indexOf('|'));
+			Integer current = registeredIndex.get(key);
+			if (current == null || recLineNum < current)
+				registeredIndex.put(key, recLineNum);
+			filter.add(key);
+		}
+
+		// if the database outgrew the filter, build a larger one
+		if (filter.isFull())
+			rebuildFilter(filter.getCapacity() * 2);
+	}
+
+	/**
+	 * Removes a record from the indexes.
+	 *
+	 * @param recLineNum The record line number of the record.
+	 * @param line       The first line of the record (name|address) as it was
+	 *                   when the record was indexed.
+	 */
+	public void remove(int recLineNum, String line) {
+		if (line.equals(""))
+			return;
+
+		String name = nameOf(line);
+		removeFrom(nameIndex, name, recLineNum);
+		if (similarNames != null && !nameIndex.containsKey(name))
+			similarNames.remove(name);
+
+		if (line.endsWith("|")) {
+			removeFrom(placeholderIndex, name, recLineNum);
+		} else {
+			String key = name + line.substring(line.indexOf('|'));
+			Integer current = registeredIndex.get(key);
+			if (current != null && current == recLineNum)
+				registeredIndex.remove(key);
+		}
+	}
+
+	/**
+	 * Removes every record from the indexes.
+	 *
+	 * @param numRecords The number of records expected to be added next, used to
+	 *                   size the filter.
+	 */
+	public void clear(int numRecords) {
+		nameIndex.clear();
+		registeredIndex.clear();
+		placeholderIndex.clear();
+		similarNames = null;
+
+		// every record adds its name, and registered records add their key as well
+		filter = new BloomFilter(numRecords * 2, FILTER_FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * Builds a new filter from the names and keys currently in the indexes. Removed
+	 * records leave their names in the old filter, so this also drops them.
+	 */
+	private void rebuildFilter(int capacity) {
+		filter = new BloomFilter(capacity, FILTER_FALSE_POSITIVE_RATE);
+		for (String name : nameIndex.keySet()) {
+			filter.add(name);
+		}
+		for (String key : registeredIndex.keySet()) {
+			filter.add(key);
+		}
+	}
+
+	/**
+	 * Gets the fraction of lookups for missing names or keys that the filter did
+	 * not reject.
+	 *
+	 * @return The measured false positive rate of the filter.
+	 */
+	public double getFilterFalsePositiveRate() {
+		long numAbsent = numFilterMisses.get() + numFilterFalsePositives.get();
+		return numAbsent == 0 ? 0 : (double) numFilterFalsePositives.get() / numAbsent;
+	}
+
+	/**
+	 * Gets the false positive rate expected from the size of the filter and the
+	 * number of names and keys in it.
+	 *
+	 * @return The expected false positive rate of the filter.
+	 */
+	public double getFilterExpectedFalsePositiveRate() {
+		return filter.expectedFalsePositiveRate();
+	}
+
+	/**
+	 * Checks the filter before a lookup.
+	 *
+	 * @return False if the name or key is definitely not in the indexes.
+	 */
+	private boolean passesFilter(String value) {
+		if (filter.mightContain(value))
+			return true;
+		numFilterMisses.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Counts a lookup that passed the filter but found nothing.
+	 */
+	private void countIfFalsePositive(Object result) {
+		if (result == null)
+			numFilterFalsePositives.incrementAndGet();
+	}
+
+	/**
+	 * Searches for the first record with the given name.
+	 *
+	 * @param name The name to be searched for.
+	 * @return The record line number of the first record with that name, or -1 if
+	 *         there is none.
+	 */
+	public int findName(String name) {
+		String canonical = canonicalName(name);
+		if (!passesFilter(canonical))
+			return -1;
+
+		List<Integer> records = nameIndex.get(canonical);
+		countIfFalsePositive(records);
+		if (records == null || records.isEmpty())
+			return -1;
+		return records.get(0);
+	}
+
+	/**
+	 * Searches for every record with the given name.
+	 *
+	 * @param name The name to be searched for.
+	 * @return The record line numbers of every record with that name.
+	 */
+	public List<Integer> findAllNamed(String name) {
+		List<Integer> records = nameIndex.get(canonicalName(name));
+		if (records == null)
+			return Collections.emptyList();
+		return records;
+	}
+
+	/**
+	 * Searches for the registered record with the given name|address key.
+	 *
+	 * @param key The canonical name and address separated by a |.
+	 * @return The record line number of the registered record, or -1 if there is
+	 *         none.
+	 */
+	public int findRegistered(String key) {
+		if (!passesFilter(key))
+			return -1;
+
+		Integer recLineNum = registeredIndex.get(key);
+		countIfFalsePositive(recLineNum);
+		if (recLineNum == null)
+			return -1;
+		return recLineNum;
+	}
+
+	/**
+	 * Searches for the one name in the indexes that the given name is most likely
+	 * a misspelling of, for example "JOHN SMITH" for "JON SMITH". Names of at least
+	 * 8 characters may be 1 edit away, and names of at least 16 characters 2 edits.
+	 * A name is only returned if it is the only one that close, so an ambiguous
+	 * spelling is never linked to the wrong person.
+	 *
+	 * @param name The name to be searched for.
+	 * @return The canonical name itself if it is in the indexes, the only name
+	 *         close enough to it, or null if there is none or more than one.
+	 */
+	public String findSimilarName(String name) {
+		return findSimilarName(name, null);
+	}
+
+	/**
+	 * Searches for the one name in the indexes that the given name is most likely
+	 * a misspelling of, leaving out a name it can never be, for example the name
+	 * of the user whose interactions are being entered.
+	 *
+	 * @param name         The name to be searched for.
+	 * @param excludedName A name that is never returned for a misspelling, or null.
+	 * @return The canonical name itself if it is in the indexes, the only other
+	 *         name close enough to it, or null if there is none or more than one.
+	 */
+	public String findSimilarName(String name, String excludedName) {
+		String canonical = canonicalName(name);
+		String excluded = excludedName == null ? null : canonicalName(excludedName);
+
+		// an exact match is always the most likely one
+		if (nameIndex.containsKey(canonical))
+			return canonical;
+
+		int maxDistance = canonical.length() >= MIN_LENGTH_TWO_EDITS ? 2
+				: canonical.length() >= MIN_LENGTH_ONE_EDIT ? 1 : 0;
+		if (maxDistance == 0)
+			return null;
+
+		// build the index the first time it is needed, so loading the database does
+		// not pay for it
+		if (similarNames == null) {
+			similarNames = new NameSimilarityIndex();
+			for (String indexedName : nameIndex.keySet()) {
+				similarNames.add(indexedName);
+			}
+		}
+
+		// more than one name close enough means none of them is certain
+		List<String> candidates = similarNames.search(canonical, maxDistance);
+		candidates.remove(excluded);
+		return candidates.size() == 1 ? candidates.get(0) : null;
+	}
+
+	/**
+	 * Searches for every placeholder record with the given name.
+	 *
+	 * @param name The name to be searched for.
+	 * @return The record line numbers of the placeholder records, in file order.
+	 */
+	public List<Integer> findPlaceholders(String name) {
+		String canonical = canonicalName(name);
+		if (!passesFilter(canonical))
+			return Collections.emptyList();
+
+		List<Integer> records = placeholderIndex.get(canonical);
+		if (records == null)
+			return Collections.emptyList();
+		return records;
+	}
+
+	/**
+	 * Gets the canonical name from the first line of a record.
+	 *
+	 * @param line The first line of a record (name|address).
+	 * @return The canonical name in the line.
+	 */
+	private static String nameOf(String line) {
+		int separator = line.indexOf('|');
+		return canonicalName(separator == -1 ? line : line.substring(0, separator));
+	}
+
+	/**
+	 * Adds a record line number to a list in the given index, keeping the list in
+	 * file order.
+	 */
+	private static void addSorted(Map<String, List<Integer>> index, String key, int recLineNum) {
+		List<Integer> records = index.get(key);
+		if (records == null) {
+			records = new ArrayList<>(1);
+			index.put(key, records);
+		}
+
+		// records are almost always added to the end of the file
+		int pos = Collections.binarySearch(records, recLineNum);
+		if (pos < 0)
+			records.add(-pos - 1, recLineNum);
+	}
+
+	/**
+	 * Removes a record line number from a list in the given index.
+	 */
+	private static void removeFrom(Map<String, List<Integer>> index, String key, int recLineNum) {
+		List<Integer> records = index.get(key);
+		if (records == null)
+			return;
+
+		records.remove(Integer.valueOf(recLineNum));
+		if (records.isEmpty())
+			index.remove(key);
+	}
+}
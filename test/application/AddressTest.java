@@ -0,0 +1,46 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests that an Address is read back from the address part of a record.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class AddressTest {
+
+	@Test
+	public void readsEveryComponent() {
+		Address address = new Address("12 Oak St, Davis, ca 95616");
+		assertEquals("12 OAK ST, DAVIS, CA 95616", address.toString());
+	}
+
+	@Test
+	public void readsWhatToStringWrote() {
+		Address address = new Address("1 Elm St", "San Jose", "CA", 95112);
+		assertEquals(address.toString(), new Address(address.toString()).toString());
+	}
+
+	@Test
+	public void ignoresTextAfterTheZipCode() {
+		assertEquals("1 A ST, B, CA 12345", new Address("1 A St, B, CA 12345 X, Y").toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAddressWithoutCity() {
+		new Address("12 Oak St");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAddressWithoutZipCode() {
+		new Address("12 Oak St, Davis, CA");
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void rejectsZipCodeThatIsNotANumber() {
+		new Address("12 Oak St, Davis, CA 9561X");
+	}
+}
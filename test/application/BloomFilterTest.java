@@ -0,0 +1,87 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests that the Bloom filter never rules out a name that was added, and that
+ * the indexes behind it still find every record after the filter was rebuilt
+ * and records were removed or merged.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class BloomFilterTest {
+
+	@Test
+	public void addedNamesAreNeverRuledOut() {
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		for (int i = 0; i < 1000; i++) {
+			filter.add("USER " + i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(filter.mightContain("USER " + i));
+		}
+
+		// names that were never added only get through about as often as the filter
+		// was sized for
+		int numFalsePositives = 0;
+		for (int i = 1000; i < 11000; i++) {
+			if (filter.mightContain("USER " + i))
+				numFalsePositives++;
+		}
+		assertTrue(numFalsePositives + " false positives", numFalsePositives < 300);
+	}
+
+	@Test
+	public void indexAgreesWithFilterAfterGrowthAndRemovals() {
+		// the filter starts small, so adding many records rebuilds it several times
+		UserIndex index = new UserIndex();
+		index.clear(1);
+		for (int i = 0; i < 500; i++) {
+			index.add(i * 6, "USER " + i + "|" + i + " OAK ST, DAVIS, CA 95616");
+		}
+
+		// remove every other record; the rest are still found
+		for (int i = 0; i < 500; i += 2) {
+			index.remove(i * 6, "USER " + i + "|" + i + " OAK ST, DAVIS, CA 95616");
+		}
+		for (int i = 0; i < 500; i++) {
+			int expected = i % 2 == 0 ? -1 : i * 6;
+			assertEquals(expected, index.findName("user " + i));
+			assertEquals(expected, index.findRegistered("USER " + i + "|" + i + " OAK ST, DAVIS, CA 95616"));
+		}
+
+		// a removed name added again is found again
+		index.add(6000, "USER 0|");
+		assertEquals(6000, index.findName("USER 0"));
+		assertEquals(1, index.findPlaceholders("USER 0").size());
+	}
+
+	@Test
+	public void mergedRecordsAreFoundThroughTheFilter() throws IOException {
+		File databaseFile = File.createTempFile("exposure", ".txt");
+		ExposureTracker expTracker = new ExposureTracker(databaseFile.getPath());
+		try {
+			User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+			User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+			expTracker.registerNewUser(ann, "NOT TESTED", "BOB RAY");
+			expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE");
+
+			// BOB's empty record was merged into his registered one, which is found by
+			// name and by name and address
+			assertTrue(expTracker.userAlrRegistered(bob));
+			assertTrue(expTracker.loginUser(bob));
+			assertTrue(!expTracker.loginUser(new User("BOB RAY", "9 Elm St", "Davis", "CA", 95616)));
+			assertTrue(!expTracker.userAlrRegistered(new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616)));
+		} finally {
+			expTracker.close();
+			databaseFile.delete();
+		}
+	}
+}
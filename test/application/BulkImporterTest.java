@@ -0,0 +1,98 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that BulkImporter skips header rows wherever blank lines put them,
+ * reports rejected rows with its progress, and writes a database the tracker
+ * can open.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class BulkImporterTest {
+	private File usersFile;
+	private File interactionsFile;
+	private File databaseFile;
+	private ByteArrayOutputStream progress = new ByteArrayOutputStream();
+
+	@Before
+	public void setUp() throws IOException {
+		usersFile = File.createTempFile("users", ".csv");
+		interactionsFile = File.createTempFile("interactions", ".csv");
+		databaseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		usersFile.delete();
+		interactionsFile.delete();
+		databaseFile.delete();
+	}
+
+	@Test
+	public void headerAfterBlankLinesIsSkipped() throws IOException {
+		write(usersFile, "\n\nname,street,city,state,zip,test status\n"
+				+ "Ann Lee,1 Oak St,Davis,CA,95616,TESTED POSITIVE\n" + "Bob Ray,2 Oak St,Davis,CA,95616,\n");
+		write(interactionsFile, "\nName,Street,City,State,Zip,Interactions\n"
+				+ "Ann Lee,1 Oak St,Davis,CA,95616,Bob Ray\n" + "Bob Ray,2 Oak St,Davis,CA,95616,Ann Lee\n");
+
+		BulkImporter.ImportReport report = importFiles();
+		assertEquals(0, report.getNumRejectedRows());
+		assertEquals(2, report.getNumUsers());
+
+		ExposureTracker expTracker = new ExposureTracker(databaseFile.getPath());
+		try {
+			User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+			assertTrue(expTracker.loginUser(bob));
+			assertEquals("FIRST-DEGREE", expTracker.getExposureStatus(bob));
+		} finally {
+			expTracker.close();
+		}
+	}
+
+	@Test
+	public void headerIsOnlySkippedAsTheFirstRow() throws IOException {
+		write(usersFile, "Ann Lee,1 Oak St,Davis,CA,95616\n" + "name,street,city,state,zip\n");
+		write(interactionsFile, "");
+
+		BulkImporter.ImportReport report = importFiles();
+		assertEquals(1, report.getNumRejectedRows());
+		assertEquals(1, report.getNumUsers());
+	}
+
+	@Test
+	public void rejectedRowsAreReportedWithProgress() throws IOException {
+		write(usersFile, "Ann Lee,1 Oak St,Davis,CA,9561\n" + "Bob Ray,2 Oak St,Davis,CA,95616\n");
+		write(interactionsFile, "Cal Smith,3 Oak St,Davis,CA,95616,Bob Ray\n");
+
+		BulkImporter.ImportReport report = importFiles();
+		assertEquals(2, report.getNumRejectedRows());
+		String printed = new String(progress.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(printed, printed.contains(usersFile.getName() + " line 1 skipped"));
+		assertTrue(printed, printed.contains(interactionsFile.getName() + " line 1 skipped"));
+		assertFalse(new File(databaseFile.getPath() + ".tmp").exists());
+	}
+
+	private BulkImporter.ImportReport importFiles() throws IOException {
+		BulkImporter importer = new BulkImporter(new PrintStream(progress, true, "UTF-8"));
+		return importer.importFiles(usersFile, interactionsFile, databaseFile);
+	}
+
+	private static void write(File file, String text) throws IOException {
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,90 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that the contact graph built from the database lines holds the same
+ * interactions as the lines, and keeps them through changes to its rows and
+ * merges of the changed rows into its arrays.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ContactGraphTest {
+
+	@Test
+	public void graphHoldsTheInteractionsOfEveryRecord() {
+		// the last record is cut off before its interactions line
+		List<String> lines = Arrays.asList("ANN LEE|1 OAK ST, DAVIS, CA 95616", "TESTED POSITIVE", "", "BOB RAY|CAL SMITH|",
+				"6|12|", "", "BOB RAY|", "", "1", "ANN LEE|", "0|", "", "CAL SMITH|", "", "1", "ANN LEE|", "0", "",
+				"DEE KAY|");
+		ContactGraph graph = new ContactGraph(lines);
+
+		assertEquals(4, graph.numRecords());
+		assertEquals("6|12|", graph.rowToLine(0));
+		assertEquals("0|", graph.rowToLine(1));
+		assertEquals("0|", graph.rowToLine(2));
+		assertEquals(0, graph.degree(3));
+
+		// the arrays built from the same lines give the same graph
+		ContactGraph fromArrays = new ContactGraph(new int[] { 0, 2, 3, 4, 4 }, new int[] { 1, 2, 0, 0 });
+		for (int record = 0; record < 4; record++) {
+			assertEquals(graph.rowToLine(record), fromArrays.rowToLine(record));
+		}
+	}
+
+	@Test
+	public void changedRowsAreKeptThroughAMerge() {
+		ContactGraph graph = new ContactGraph(new int[] { 0, 2, 3, 4 }, new int[] { 1, 2, 0, 0 });
+		int dee = graph.addRecord();
+
+		assertTrue(graph.addNeighbour(dee, 0));
+		assertFalse(graph.addNeighbour(dee, 0));
+		assertTrue(graph.addNeighbour(0, dee));
+		assertTrue(graph.removeNeighbour(0, 1));
+		assertFalse(graph.removeNeighbour(0, 1));
+
+		// replacing with an interaction the record already has only removes the old one
+		assertTrue(graph.replaceNeighbour(0, 2, dee));
+		assertEquals("18|", graph.rowToLine(0));
+		assertTrue(graph.replaceNeighbour(2, 0, 1));
+		assertEquals("6|", graph.rowToLine(2));
+
+		graph.merge();
+		assertEquals(4, graph.numRecords());
+		assertEquals("18|", graph.rowToLine(0));
+		assertEquals("0|", graph.rowToLine(1));
+		assertEquals("6|", graph.rowToLine(2));
+		assertEquals("0|", graph.rowToLine(dee));
+	}
+
+	@Test
+	public void largeRowsDoNotListAnInteractionTwice() {
+		// rows with more than 32 interactions are checked through a set
+		ContactGraph graph = new ContactGraph(new int[] { 0 }, new int[0]);
+		int center = graph.addRecord();
+		for (int i = 0; i < 100; i++) {
+			int other = graph.addRecord();
+			assertTrue(graph.addNeighbour(center, other));
+			assertFalse(graph.addNeighbour(center, other));
+		}
+		assertEquals(100, graph.degree(center));
+
+		// after a replacement, the set still knows which interactions are there
+		assertTrue(graph.replaceNeighbour(center, 1, 2));
+		assertFalse(graph.addNeighbour(center, 2));
+		assertTrue(graph.addNeighbour(center, 1));
+		assertEquals(100, graph.degree(center));
+
+		graph.merge();
+		assertEquals(100, graph.degree(center));
+		assertFalse(graph.addNeighbour(center, 50));
+	}
+}
@@ -0,0 +1,138 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the journal replays only committed batches, survives a batch cut
+ * off by a crash, and is only erased after the database file was written.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class DatabaseJournalTest {
+	private File databaseFile;
+	private File journalFile;
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		journalFile = new File(databaseFile.getPath() + ".log");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+		journalFile.delete();
+		new File(databaseFile.getPath() + ".tmp").delete();
+	}
+
+	@Test
+	public void onlyCommittedBatchesAreReplayed() throws IOException {
+		DatabaseJournal journal = new DatabaseJournal(databaseFile);
+		journal.append(changes(1, "ANN LEE|"), false);
+		journal.append(changes(2, "TESTED POSITIVE", 4, "1|"), false);
+
+		List<String> lines = new ArrayList<>();
+		assertEquals(3, new DatabaseJournal(databaseFile).replay(lines));
+		assertEquals(Arrays.asList("", "ANN LEE|", "TESTED POSITIVE", "", "1|"), lines);
+	}
+
+	@Test
+	public void batchCutOffByCrashIsDroppedBeforeTheNextAppend() throws IOException {
+		DatabaseJournal journal = new DatabaseJournal(databaseFile);
+		journal.append(changes(0, "ANN LEE|"), false);
+		journal.append(changes(1, "TESTED POSITIVE"), false);
+
+		// cut the second batch off in the middle of its line
+		cutOff("0|ANN LEE|\nCOMMIT\n1|TESTED PO".length());
+
+		// replaying drops the partial batch, so the next batch starts a new line
+		DatabaseJournal reopened = new DatabaseJournal(databaseFile);
+		List<String> lines = new ArrayList<>();
+		assertEquals(1, reopened.replay(lines));
+		reopened.append(changes(2, "1"), false);
+
+		lines = new ArrayList<>();
+		assertEquals(2, new DatabaseJournal(databaseFile).replay(lines));
+		assertEquals(Arrays.asList("ANN LEE|", "", "1"), lines);
+	}
+
+	@Test
+	public void batchCutOffInItsCommitLineIsDropped() throws IOException {
+		DatabaseJournal journal = new DatabaseJournal(databaseFile);
+		journal.append(changes(0, "ANN LEE|", 1, "NOT TESTED"), false);
+		journal.append(changes(6, "BOB RAY|"), false);
+		cutOff("0|ANN LEE|\n1|NOT TESTED\nCOMMIT\n6|BOB RAY|\nCOMM".length());
+
+		// without the cut, the next batch would continue the COMMIT line
+		new DatabaseJournal(databaseFile).replay(new ArrayList<String>());
+		new DatabaseJournal(databaseFile).append(changes(1, "TESTED NEGATIVE"), false);
+
+		UserDb database = new UserDb(databaseFile.getPath(), true);
+		assertEquals("TESTED NEGATIVE", database.readTestStatus(0));
+		database.close();
+		assertFalse(new String(Files.readAllBytes(databaseFile.toPath()), StandardCharsets.UTF_8).contains("BOB RAY"));
+	}
+
+	@Test
+	public void failedCheckpointKeepsTheJournal() throws IOException {
+		UserDb database = new UserDb(databaseFile.getPath(), true);
+		ExposureTracker expTracker = new ExposureTracker(database);
+		User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+
+		// a directory in the way of the temporary file makes the rewrite fail, and
+		// the failed rewrite removes what is in the way of the next one
+		File temp = new File(databaseFile.getPath() + ".tmp");
+		assertTrue(temp.mkdir());
+		assertFalse(database.checkpoint());
+		assertTrue(journalFile.length() > 0);
+		assertFalse(temp.exists());
+
+		// the journaled registration is still there when the database is opened
+		database = new UserDb(databaseFile.getPath());
+		assertEquals("TESTED POSITIVE", database.readTestStatus(ann));
+		assertFalse(journalFile.exists());
+	}
+
+	/**
+	 * Makes a batch of changed lines from line numbers and their new contents.
+	 */
+	private static Map<Integer, String> changes(Object... lineNumsAndLines) {
+		Map<Integer, String> changes = new TreeMap<>();
+		for (int i = 0; i < lineNumsAndLines.length; i += 2) {
+			changes.put((Integer) lineNumsAndLines[i], (String) lineNumsAndLines[i + 1]);
+		}
+		return changes;
+	}
+
+	/**
+	 * Cuts the journal off after the given number of bytes, the way a crash in
+	 * the middle of an append would.
+	 */
+	private void cutOff(long length) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+		try {
+			file.setLength(length);
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the background writer saves every submitted batch, and that a
+ * batch it cannot write is reported to the threads using the writer instead of
+ * leaving them waiting.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class DatabaseWriterTest {
+	private File databaseFile;
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+	}
+
+	@Test
+	public void flushWaitsForEverySubmittedBatch() throws IOException {
+		UserDb database = new UserDb(databaseFile.getPath());
+		database.enableAsyncWrites(DatabaseWriter.DurabilityPolicy.ON_SHUTDOWN, 0);
+		ExposureTracker expTracker = new ExposureTracker(database);
+		User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+		database.flush();
+
+		// a database opened from the file sees the registration
+		assertEquals("TESTED POSITIVE", new UserDb(databaseFile.getPath()).readTestStatus(ann));
+		database.close();
+	}
+
+	@Test(timeout = 10000)
+	public void failedWriteIsReportedInsteadOfHanging() throws IOException {
+		// a database whose writes always fail, the way a full disk would
+		UserDb database = new UserDb(databaseFile.getPath()) {
+			@Override
+			void persistChanges(List<String> lines, Map<Integer, String> changes, boolean sync) {
+				throw new IllegalStateException("disk full");
+			}
+		};
+		DatabaseWriter writer = new DatabaseWriter(database, new ArrayList<String>(),
+				DatabaseWriter.DurabilityPolicy.ON_SHUTDOWN, 0);
+		writer.submit(changes(0, "ANN LEE|"));
+
+		try {
+			writer.flush();
+			fail("flush() returned although the batch was not written");
+		} catch (IllegalStateException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+
+		// the writer has stopped, so later batches are refused as well
+		try {
+			writer.submit(changes(1, "TESTED POSITIVE"));
+			fail("submit() accepted a batch after the writer stopped");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() != null);
+		}
+		try {
+			writer.close();
+			fail("close() hid the failed batch");
+		} catch (IllegalStateException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Makes a batch with a single changed line.
+	 */
+	private static Map<Integer, String> changes(int lineNum, String line) {
+		Map<Integer, String> changes = new TreeMap<>();
+		changes.put(lineNum, line);
+		return changes;
+	}
+}
@@ -0,0 +1,144 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that exposure statuses follow the distance from users who tested
+ * positive as interactions are added and empty records merged, that a
+ * propagation visits each record once, and that withdrawing a positive result
+ * clears every exposure status that came from it.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ExposurePropagatorTest {
+	private File databaseFile;
+	private UserDb database;
+	private ExposureTracker expTracker;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+	private User cal = new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616);
+	private User dee = new User("DEE KAY", "4 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		database = new UserDb(databaseFile.getPath());
+		expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+
+		// a chain ANN - BOB - CAL - DEE, and two people only DEE named
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE, CAL SMITH");
+		expTracker.registerNewUser(cal, "NOT TESTED", "BOB RAY, DEE KAY");
+		expTracker.registerNewUser(dee, "NOT TESTED", "CAL SMITH, EVE DOE");
+		expTracker.addInteractions(dee, "FAY ROE");
+	}
+
+	@After
+	public void tearDown() {
+		expTracker.close();
+		databaseFile.delete();
+	}
+
+	@Test
+	public void statusesFollowDistanceFromPositiveUser() {
+		assertEquals("1", database.readExposureStat(bob));
+		assertEquals("2", database.readExposureStat(cal));
+		assertEquals("3", database.readExposureStat(dee));
+
+		// adding an interaction passes the third degree on as a fourth
+		assertEquals("4", placeholderLevel("EVE DOE"));
+		assertEquals("4", placeholderLevel("FAY ROE"));
+	}
+
+	@Test
+	public void withdrawClearsEveryStatusThatCameFromTheUser() {
+		expTracker.updateTestStatus(ann, "TESTED NEGATIVE");
+
+		assertEquals("", database.readExposureStat(bob));
+		assertEquals("", database.readExposureStat(cal));
+		assertEquals("", database.readExposureStat(dee));
+		assertEquals("", placeholderLevel("EVE DOE"));
+		assertEquals("", placeholderLevel("FAY ROE"));
+	}
+
+	@Test
+	public void withdrawKeepsStatusesFromOtherSources() {
+		expTracker.updateTestStatus(dee, "TESTED POSITIVE");
+		expTracker.updateTestStatus(ann, "TESTED NEGATIVE");
+
+		assertEquals("2", database.readExposureStat(bob));
+		assertEquals("1", database.readExposureStat(cal));
+		assertEquals("1", placeholderLevel("EVE DOE"));
+		assertEquals("1", placeholderLevel("FAY ROE"));
+	}
+
+	@Test
+	public void mergedEmptyRecordPassesItsStatusOn() {
+		// HAL POE is registered first, so BOB's interaction with him is an empty
+		// record that only joins HAL's record when HAL names BOB
+		User hal = new User("HAL POE", "5 Oak St", "Davis", "CA", 95616);
+		expTracker.registerNewUser(hal, "NOT TESTED", "GUS LEE");
+		expTracker.addInteractions(bob, "HAL POE");
+		expTracker.addInteractions(hal, "BOB RAY");
+
+		assertEquals("2", database.readExposureStat(hal));
+		assertEquals("3", placeholderLevel("GUS LEE"));
+	}
+
+	@Test
+	public void mergedEmptyRecordLeavesPositiveUserWithoutStatus() {
+		User hal = new User("HAL POE", "5 Oak St", "Davis", "CA", 95616);
+		expTracker.registerNewUser(hal, "TESTED POSITIVE", "GUS LEE");
+		expTracker.addInteractions(bob, "HAL POE");
+		expTracker.addInteractions(hal, "BOB RAY");
+
+		assertEquals("", database.readExposureStat(hal));
+		assertEquals("1", placeholderLevel("GUS LEE"));
+	}
+
+	@Test
+	public void cycleIsVisitedOnceAtTheShortestDistance() {
+		// closing the chain into a cycle puts DEE next to ANN once both name each
+		// other
+		expTracker.addInteractions(dee, "ANN LEE");
+		expTracker.addInteractions(ann, "DEE KAY");
+
+		// clear every status, then propagate from ANN alone
+		Map<Integer, Integer> cleared = new HashMap<>();
+		for (int lineNum = 0; lineNum < database.databaseLines.size(); lineNum += 6) {
+			cleared.put(lineNum, 0);
+		}
+		database.replaceExposureStatuses(cleared);
+		ExposurePropagator.PropagationStats stats = new ExposurePropagator(database)
+				.propagate(database.findRegisteredUser(ann), 0);
+
+		// CAL is reached from both sides, but only once and at distance 2
+		assertEquals(6, stats.getNodesVisited());
+		assertEquals(5, stats.getRecordsChanged());
+		assertEquals("", database.readExposureStat(ann));
+		assertEquals("1", database.readExposureStat(bob));
+		assertEquals("2", database.readExposureStat(cal));
+		assertEquals("1", database.readExposureStat(dee));
+		assertEquals("2", placeholderLevel("EVE DOE"));
+		assertEquals("2", placeholderLevel("FAY ROE"));
+	}
+
+	/**
+	 * Gets the stored exposure status of the only empty record with a name.
+	 */
+	private String placeholderLevel(String name) {
+		return database.readExposureStat(database.findUnregisteredUser(new User(name)).get(0));
+	}
+}
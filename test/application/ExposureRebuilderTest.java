@@ -0,0 +1,166 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that rebuilding every exposure status corrects the wrong ones, leaves
+ * records changed during the rebuild to that change, and searches a copy of the
+ * contact graph that later changes do not reach.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ExposureRebuilderTest {
+	private File databaseFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+	private User cal = new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616);
+	private User dee = new User("DEE KAY", "4 Oak St", "Davis", "CA", 95616);
+	private User eve = new User("EVE DOE", "5 Oak St", "Davis", "CA", 95616);
+
+	// record line number whose status is changed by someone else during a rebuild,
+	// or -1 for none
+	private int changedDuringRebuild = -1;
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+	}
+
+	@Test
+	public void wrongStatusesAreCorrected() {
+		UserDb database = new UserDb(databaseFile.getPath());
+		registerChain(database);
+
+		// statuses that are too severe, not severe enough, beyond the third degree and
+		// on the positive user
+		Map<Integer, Integer> wrongLevels = new HashMap<>();
+		wrongLevels.put(database.findRegisteredUser(ann), 2);
+		wrongLevels.put(database.findRegisteredUser(bob), 3);
+		wrongLevels.put(database.findRegisteredUser(cal), 0);
+		wrongLevels.put(database.findRegisteredUser(eve), 1);
+		database.replaceExposureStatuses(wrongLevels);
+
+		ExposureRebuilder rebuilder = new ExposureRebuilder(database);
+		rebuilder.setBatchSize(2);
+		ExposureRebuilder.RebuildReport report = rebuilder.rebuild();
+		assertEquals(1, report.getNumSources());
+		assertEquals(4, report.getNumWritten());
+		assertEquals(2, report.getNumBatches());
+		assertChainStatuses(database);
+
+		// the statuses are right now, so nothing is written again
+		assertEquals(0, new ExposureRebuilder(database).rebuild().getNumWritten());
+		database.close();
+		assertChainStatuses(new UserDb(databaseFile.getPath()));
+	}
+
+	@Test
+	public void recordChangedDuringRebuildIsSkipped() {
+		UserDb database = new UserDb(databaseFile.getPath()) {
+			@Override
+			public int replaceExposureStatuses(Map<Integer, Integer> exposureLevels) {
+				int numChanged = super.replaceExposureStatuses(exposureLevels);
+
+				// another change to a record the rebuild has not corrected yet
+				if (changedDuringRebuild != -1 && !exposureLevels.containsKey(changedDuringRebuild)) {
+					int recLineNum = changedDuringRebuild;
+					changedDuringRebuild = -1;
+					super.replaceExposureStatuses(Collections.singletonMap(recLineNum, 2));
+				}
+				return numChanged;
+			}
+		};
+		registerChain(database);
+
+		int bobLineNum = database.findRegisteredUser(bob);
+		int deeLineNum = database.findRegisteredUser(dee);
+		Map<Integer, Integer> wrongLevels = new HashMap<>();
+		wrongLevels.put(bobLineNum, 3);
+		wrongLevels.put(deeLineNum, 1);
+		wrongLevels.put(database.findRegisteredUser(eve), 0); // only the two above are wrong
+		database.replaceExposureStatuses(wrongLevels);
+
+		// the record corrected last is changed while the first one is written
+		int otherLineNum = Math.max(bobLineNum, deeLineNum);
+		changedDuringRebuild = otherLineNum;
+		ExposureRebuilder rebuilder = new ExposureRebuilder(database);
+		rebuilder.setBatchSize(1);
+		ExposureRebuilder.RebuildReport report = rebuilder.rebuild();
+		assertEquals(1, report.getNumWritten());
+		assertEquals(1, report.getNumSkipped());
+
+		// the other change is kept, and the other record is corrected
+		assertEquals(-1, changedDuringRebuild);
+		assertEquals("2", database.readExposureStat(otherLineNum));
+		int correctedLineNum = Math.min(bobLineNum, deeLineNum);
+		assertEquals(correctedLineNum == bobLineNum ? "1" : "3", database.readExposureStat(correctedLineNum));
+		database.close();
+	}
+
+	@Test
+	public void snapshotIsNotChangedWithTheGraph() {
+		ContactGraph graph = new ContactGraph(new int[] { 0, 1, 2, 2 }, new int[] { 1, 0 });
+		int dee = graph.addRecord();
+		graph.addNeighbour(2, dee);
+		ContactGraph snapshot = graph.snapshot();
+		assertEquals(4, snapshot.numRecords());
+		assertEquals("18|", snapshot.rowToLine(2));
+
+		// changes to the graph after the copy, before and after they are merged
+		graph.addNeighbour(0, 2);
+		graph.removeNeighbour(2, dee);
+		graph.addRecord();
+		graph.merge();
+		graph.replaceNeighbour(1, 0, 2);
+		assertEquals(4, snapshot.numRecords());
+		assertEquals("6|", snapshot.rowToLine(0));
+		assertEquals("0|", snapshot.rowToLine(1));
+		assertEquals("18|", snapshot.rowToLine(2));
+
+		// and changes to the copy do not reach the graph
+		snapshot.addNeighbour(3, 0);
+		assertEquals("", graph.rowToLine(3));
+	}
+
+	/**
+	 * Registers a chain ANN - BOB - CAL - DEE - EVE where ANN tested positive.
+	 */
+	private void registerChain(UserDb database) {
+		ExposureTracker expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE, CAL SMITH");
+		expTracker.registerNewUser(cal, "NOT TESTED", "BOB RAY, DEE KAY");
+		expTracker.registerNewUser(dee, "NOT TESTED", "CAL SMITH, EVE DOE");
+		expTracker.registerNewUser(eve, "NOT TESTED", "DEE KAY");
+	}
+
+	/**
+	 * Checks the statuses of the chain. EVE is beyond the third degree, so the
+	 * record has none.
+	 */
+	private void assertChainStatuses(UserDb database) {
+		assertEquals("", database.readExposureStat(ann));
+		assertEquals("1", database.readExposureStat(bob));
+		assertEquals("2", database.readExposureStat(cal));
+		assertEquals("3", database.readExposureStat(dee));
+		assertEquals("", database.readExposureStat(eve));
+	}
+}
@@ -0,0 +1,132 @@
+package application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the HTTP API rejects fields it could not store, since a | or line
+ * break would split a field when the database is read, and that it adds each
+ * name of a list of interactions.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ExposureServerTest {
+	private static final String ADDRESS = "\"street\": \"1 Oak St\", \"city\": \"Davis\", \"state\": \"CA\", \"zip\": 95616";
+
+	private File databaseFile;
+	private UserDb database;
+	private ExposureTracker expTracker;
+	private ExposureServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		database = new UserDb(databaseFile.getPath());
+		expTracker = new ExposureTracker(database);
+		server = new ExposureServer(expTracker, 0);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		expTracker.close();
+		databaseFile.delete();
+	}
+
+	@Test
+	public void validRegistrationIsAccepted() throws IOException {
+		assertEquals(201, post("/users/register",
+				"{\"name\": \"Ann Lee\", " + ADDRESS + ", \"testStatus\": \"not tested\", \"interactions\": [\"Bob Ray\"]}"));
+		assertTrue(expTracker.loginUser(new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616)));
+	}
+
+	@Test
+	public void separatorInUserFieldIsRejected() throws IOException {
+		// the name holds a | written as a JSON unicode escape
+		assertEquals(400, post("/users/register",
+				"{\"name\": \"Ann \\u007c Lee\", " + ADDRESS + ", \"testStatus\": \"NOT TESTED\"}"));
+		assertEquals(400, post("/users/register", "{\"name\": \"Ann Lee\", \"street\": \"1 Oak St|2\", "
+				+ "\"city\": \"Davis\", \"state\": \"CA\", \"zip\": 95616, \"testStatus\": \"NOT TESTED\"}"));
+		assertEquals(400, post("/users/register", "{\"name\": \"Ann Lee\", \"street\": \"1 Oak St\", "
+				+ "\"city\": \"Da\\nvis\", \"state\": \"CA\", \"zip\": 95616, \"testStatus\": \"NOT TESTED\"}"));
+		assertEquals(0, database.userRecords().size());
+	}
+
+	@Test
+	public void separatorInInteractionsIsRejected() throws IOException {
+		assertEquals(400, post("/users/register", "{\"name\": \"Ann Lee\", " + ADDRESS
+				+ ", \"testStatus\": \"NOT TESTED\", \"interactions\": [\"Bob Ray\\nCal Smith\"]}"));
+		assertEquals(400, post("/users/register", "{\"name\": \"Ann Lee\", " + ADDRESS
+				+ ", \"testStatus\": \"NOT TESTED\", \"interactions\": \"Bob Ray|Cal Smith\"}"));
+		assertEquals(0, database.userRecords().size());
+
+		// interactions added later are checked the same way
+		assertEquals(201,
+				post("/users/register", "{\"name\": \"Ann Lee\", " + ADDRESS + ", \"testStatus\": \"NOT TESTED\"}"));
+		assertEquals(400,
+				post("/users/interactions", "{\"name\": \"Ann Lee\", " + ADDRESS + ", \"interactions\": \"Bob Ray\\r\"}"));
+		assertEquals(0, expTracker.getUserInteractions(new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616)).length);
+	}
+
+	@Test
+	public void everyAddedInteractionIsStored() throws IOException {
+		User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+		assertEquals(201, post("/users/register",
+				"{\"name\": \"Ann Lee\", " + ADDRESS + ", \"testStatus\": \"NOT TESTED\", \"interactions\": \"Bob Ray\"}"));
+
+		// a list of names is added as one interaction per name
+		assertEquals(200, post("/users/interactions",
+				"{\"name\": \"Ann Lee\", " + ADDRESS + ", \"interactions\": [\"Cal Smith\", \"Dan Fox\"]}"));
+		assertArrayEquals(new String[] { "BOB RAY", "CAL SMITH", "DAN FOX" }, expTracker.getUserInteractions(ann));
+
+		// a name the GUI would not accept rejects the whole list
+		assertEquals(400, post("/users/interactions",
+				"{\"name\": \"Ann Lee\", " + ADDRESS + ", \"interactions\": \"Eve Hall, Fay\"}"));
+		assertArrayEquals(new String[] { "BOB RAY", "CAL SMITH", "DAN FOX" }, expTracker.getUserInteractions(ann));
+	}
+
+	/**
+	 * Posts a JSON body to the server.
+	 *
+	 * @return The status code of the response.
+	 */
+	private int post(String path, String json) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+				.openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(json.getBytes(StandardCharsets.UTF_8));
+			}
+
+			// read the whole response so the connection can be reused
+			int status = connection.getResponseCode();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null) {
+					while (in.read() != -1) {
+					}
+				}
+			}
+			return status;
+		} finally {
+			connection.disconnect();
+		}
+	}
+}
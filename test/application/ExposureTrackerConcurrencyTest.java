@@ -0,0 +1,198 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that registering users, adding interactions and updating test statuses
+ * from many threads at once leaves the same records a single thread would: no
+ * lost updates, interactions that are listed on both records, exposure
+ * statuses a full rebuild agrees with, and a database file that reloads to what
+ * was in memory.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ExposureTrackerConcurrencyTest {
+	private static final int NUM_USERS = 96;
+	private static final int NUM_WRITERS = 4;
+	private static final int NUM_READERS = 2;
+	private static final int OPS_PER_WRITER = 300;
+	private static final String[] STATUSES = { "NOT TESTED", "TESTED NEGATIVE", "TESTED POSITIVE" };
+
+	private File databaseFile;
+	private UserDb database;
+	private ExposureTracker expTracker;
+	private ExecutorService pool;
+	private List<User> users = new ArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		database = new UserDb(databaseFile.getPath());
+		expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+		pool = Executors.newFixedThreadPool(NUM_WRITERS + NUM_READERS);
+
+		// every user has a different name, so each interaction names one user
+		for (int i = 0; i < NUM_USERS; i++) {
+			String name = "USER" + (char) ('A' + i % 26) + " NUM" + (char) ('A' + i / 26);
+			users.add(new User(name, i + " Oak St", "Davis", "CA", 95616));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		// stop any thread a failed test left running
+		pool.shutdownNow();
+		expTracker.close();
+		databaseFile.delete();
+		new File(databaseFile.getPath() + ".log").delete();
+	}
+
+	@Test
+	public void concurrentChangesKeepRecordsConsistent() throws Exception {
+		// each writer owns every NUM_WRITERS-th user, so the last status it sets for
+		// a user is the one that must be left
+		Map<Integer, String> lastStatus = new ConcurrentHashMap<>();
+		List<Throwable> errors = new ArrayList<>();
+		List<Future<?>> tasks = new ArrayList<>();
+
+		for (int w = 0; w < NUM_WRITERS; w++) {
+			final int writer = w;
+			tasks.add(pool.submit(() -> {
+				Random random = new Random(writer);
+				Set<Integer> registered = new HashSet<>();
+				for (int op = 0; op < OPS_PER_WRITER; op++) {
+					int i = writer + NUM_WRITERS * random.nextInt(NUM_USERS / NUM_WRITERS);
+					User user = users.get(i);
+					String other = users.get((i + 1 + random.nextInt(NUM_USERS - 1)) % NUM_USERS).getName();
+
+					// a user's first change registers them, naming someone who may not be
+					// registered yet
+					if (registered.add(i)) {
+						String status = STATUSES[random.nextInt(STATUSES.length)];
+						expTracker.registerNewUser(user, status, other);
+						lastStatus.put(i, status);
+					} else if (random.nextInt(4) == 0) {
+						expTracker.addInteractions(user, other);
+					} else {
+						String status = STATUSES[random.nextInt(STATUSES.length)];
+						expTracker.updateTestStatus(user, status);
+						lastStatus.put(i, status);
+					}
+				}
+				return null;
+			}));
+		}
+		for (int r = 0; r < NUM_READERS; r++) {
+			final int reader = r;
+			tasks.add(pool.submit(() -> {
+				Random random = new Random(100 + reader);
+				for (int op = 0; op < 5 * OPS_PER_WRITER; op++) {
+					User user = users.get(random.nextInt(NUM_USERS));
+					if (expTracker.loginUser(user)) {
+						String status = expTracker.getTestStatus(user);
+						assertTrue("bad status " + status, Arrays.asList(STATUSES).contains(status));
+						expTracker.getExposureStatus(user);
+						expTracker.getUserInteractions(user);
+					}
+				}
+				return null;
+			}));
+		}
+		for (Future<?> task : tasks) {
+			try {
+				task.get(120, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				errors.add(e.getCause() != null ? e.getCause() : e);
+			}
+		}
+		assertTrue("errors " + errors, errors.isEmpty());
+
+		// no status update was lost
+		for (Map.Entry<Integer, String> entry : lastStatus.entrySet()) {
+			User user = users.get(entry.getKey());
+			assertTrue(user.getName() + " is registered", expTracker.loginUser(user));
+			assertEquals(user.getName(), entry.getValue(), expTracker.getTestStatus(user));
+		}
+
+		// every interaction is listed on both records, and only on live ones
+		int numLines = database.databaseLines.size();
+		for (int recLineNum = 0; recLineNum < numLines; recLineNum += 6) {
+			if (database.isRecordCleared(recLineNum))
+				continue;
+			for (String other : database.readInteractionsRecLineNum(recLineNum)) {
+				int otherLineNum = Integer.parseInt(other);
+				assertTrue(recLineNum + " names cleared record " + otherLineNum,
+						!database.isRecordCleared(otherLineNum));
+				List<String> otherInteractions = Arrays.asList(database.readInteractionsRecLineNum(otherLineNum));
+				assertTrue(recLineNum + " and " + otherLineNum + " are not mutual",
+						otherInteractions.contains(String.valueOf(recLineNum)));
+			}
+		}
+
+		// the exposure statuses are the ones a full rebuild computes
+		ExposureRebuilder.RebuildReport report = expTracker.rebuildExposures();
+		assertEquals(report.toString(), 0, report.getNumMoreSevere() + report.getNumLessSevere());
+
+		// reading every record from several threads at once gives the same users
+		List<String> expectedUsers = describe(database.userRecords());
+		List<Future<List<String>>> reads = new ArrayList<>();
+		for (int r = 0; r < 100; r++) {
+			reads.add(pool.submit(() -> describe(database.userRecords())));
+		}
+		for (Future<List<String>> read : reads) {
+			assertEquals(expectedUsers, read.get(60, TimeUnit.SECONDS));
+		}
+
+		// the file holds what was in memory
+		List<String> inMemory = describeRecords(expTracker);
+		expTracker.close();
+		expTracker = new ExposureTracker(databaseFile.getPath());
+		assertEquals(inMemory, describeRecords(expTracker));
+	}
+
+	/**
+	 * Describes each user by their name and address.
+	 */
+	private static List<String> describe(List<User> records) {
+		List<String> described = new ArrayList<>();
+		for (User user : records) {
+			described.add(user.getName() + "|" + user.getAddr());
+		}
+		return described;
+	}
+
+	/**
+	 * Describes the status and interactions of every user.
+	 */
+	private List<String> describeRecords(ExposureTracker tracker) {
+		List<String> described = new ArrayList<>();
+		for (User user : users) {
+			if (tracker.loginUser(user))
+				described.add(user.getName() + "/" + tracker.getTestStatus(user) + "/"
+						+ tracker.getExposureStatus(user) + "/" + String.join(",", tracker.getUserInteractions(user)));
+		}
+		return described;
+	}
+}
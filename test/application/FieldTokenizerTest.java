@@ -0,0 +1,91 @@
+package application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that FieldTokenizer reads fields the same way String.split and
+ * Integer.parseInt would.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class FieldTokenizerTest {
+	// lines with empty fields, leading and trailing separators and no separators
+	private static final String[] LINES = { "", "|", "||", "a", "a|", "a||", "|a", "||a", "a|b", "a||b", "a|b|",
+			"a||b||", "|a|b|", "ANN LEE|12 OAK ST, DAVIS, CA 95616", "BOB RAY|JO DOE|", "6|12|" };
+
+	@Test
+	public void splitMatchesStringSplit() {
+		for (String line : LINES) {
+			assertArrayEquals("split(\"" + line + "\")", line.split("\\|"), FieldTokenizer.split(line, '|'));
+		}
+	}
+
+	@Test
+	public void splitOfEmptyStringIsOneEmptyField() {
+		assertArrayEquals(new String[] { "" }, FieldTokenizer.split("", '|'));
+	}
+
+	@Test
+	public void splitDropsTrailingEmptyFields() {
+		assertArrayEquals(new String[] { "a", "", "b" }, FieldTokenizer.split("a||b||", '|'));
+		assertArrayEquals(new String[0], FieldTokenizer.split("|||", '|'));
+	}
+
+	@Test
+	public void firstFieldMatchesFirstSplitField() {
+		for (String line : LINES) {
+			String[] fields = line.split("\\|");
+			if (fields.length > 0)
+				assertEquals("firstField(\"" + line + "\")", fields[0], FieldTokenizer.firstField(line, '|'));
+		}
+	}
+
+	@Test
+	public void nextVisitsEveryFieldIncludingTrailingEmptyOne() {
+		FieldTokenizer fields = new FieldTokenizer(", ").reset("12 OAK ST, , DAVIS, ");
+		String[] expected = { "12 OAK ST", "", "DAVIS", "" };
+		for (String field : expected) {
+			assertTrue(fields.next());
+			assertEquals(field, fields.field());
+		}
+		assertFalse(fields.next());
+	}
+
+	@Test
+	public void nextReadsOnePartOfALine() {
+		String line = "ANN LEE|CA 95616|X";
+		FieldTokenizer fields = new FieldTokenizer(" ").reset(line, 8, 16);
+		assertTrue(fields.next());
+		assertEquals("CA", fields.field());
+		assertTrue(fields.next());
+		assertEquals(95616, fields.intField());
+		assertFalse(fields.next());
+	}
+
+	@Test
+	public void parseIntMatchesIntegerParseInt() {
+		String[] numbers = { "0", "7", "-7", "+7", "2147483647", "-2147483648" };
+		for (String number : numbers) {
+			assertEquals(Integer.parseInt(number), FieldTokenizer.parseInt("|" + number + "|", 1, number.length() + 1));
+		}
+	}
+
+	@Test
+	public void parseIntRejectsWhatIntegerParseIntRejects() {
+		String[] notNumbers = { "", "-", "+", "1a", "2147483648", "-2147483649", " 1" };
+		for (String notNumber : notNumbers) {
+			try {
+				FieldTokenizer.parseInt(notNumber, 0, notNumber.length());
+				throw new AssertionError("parseInt(\"" + notNumber + "\") did not fail");
+			} catch (NumberFormatException e) {
+				// expected, like Integer.parseInt
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that interaction names are matched as whole names, so a placeholder
+ * record is only merged with a user who named its interaction exactly, and no
+ * other name in the list is changed by the match.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class InteractionNamesTest {
+	private File databaseFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+	}
+
+	@Test
+	public void onlyWholeNamesMatch() {
+		InteractionNames names = new InteractionNames("joann lee, Bob Ray, , BOB RAY,CAL SMITH");
+
+		// a name that is only part of another name in the list does not match
+		assertFalse(names.match("ANN LEE"));
+		assertTrue(names.match("JOANN LEE"));
+		assertTrue(names.match(" cal smith "));
+
+		// a repeated name and an empty one are each left out once
+		assertEquals("BOB RAY", names.getUnmatched());
+		assertTrue(names.match("BOB RAY"));
+		assertEquals("", names.getUnmatched());
+	}
+
+	@Test
+	public void placeholderIsNotMergedWithALongerName() {
+		ExposureTracker expTracker = new ExposureTracker(new UserDb(databaseFile.getPath()));
+		expTracker.setFuzzyNameMatching(false);
+
+		// ANN's placeholder for BOB has ANN LEE as its interaction, which is part of
+		// JOANN LEE but not the same name
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+		expTracker.registerNewUser(bob, "NOT TESTED", "JOANN LEE, CAL SMITH");
+
+		// BOB gets a new record that keeps both names as they were entered, and is not
+		// exposed through ANN
+		assertArrayEquals(new String[] { "JOANN LEE", "CAL SMITH" }, expTracker.getUserInteractions(bob));
+		assertEquals("", expTracker.getExposureStatus(bob));
+		UserDb database = new UserDb(databaseFile.getPath());
+		assertEquals(1, database.findUnregisteredUser(bob).size());
+		expTracker.close();
+	}
+}
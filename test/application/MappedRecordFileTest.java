@@ -0,0 +1,117 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a record file reopened after its lines were published holds the
+ * same lines, including lines too long for their field, and that lines which
+ * were not published yet are not counted.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class MappedRecordFileTest {
+	private File recordFile;
+	private File varFile;
+	private File textFile;
+
+	@Before
+	public void setUp() throws IOException {
+		recordFile = File.createTempFile("exposure", ".db");
+		recordFile.delete();
+		varFile = new File(recordFile.getPath() + ".var");
+		textFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.delete();
+		varFile.delete();
+		textFile.delete();
+	}
+
+	@Test
+	public void publishedLinesAreThereWhenReopened() throws IOException {
+		// an interactions line longer than its field goes to the variable-length file
+		StringBuilder interactions = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			interactions.append(6 * i).append('|');
+		}
+		List<String> lines = Arrays.asList("ANN LEE|1 OAK ST, DAVIS, CA 95616", "TESTED POSITIVE", "",
+				"BOB RAY|CAL SMITH|DEE KAY|", interactions.toString(), "");
+
+		MappedRecordFile file = new MappedRecordFile(recordFile.getPath());
+		file.addAll(lines);
+		file.publishLines();
+
+		// a status changed in place is forced with the rest of the file
+		file.set(1, "TESTED NEGATIVE");
+		file.close();
+
+		List<String> expected = new ArrayList<>(lines);
+		expected.set(1, "TESTED NEGATIVE");
+		MappedRecordFile reopened = new MappedRecordFile(recordFile.getPath());
+		assertEquals(expected, new ArrayList<>(reopened));
+
+		// a longer line replaces the one in the variable-length file
+		interactions.append("240|");
+		reopened.set(4, interactions.toString());
+		reopened.close();
+		reopened = new MappedRecordFile(recordFile.getPath());
+		assertEquals(interactions.toString(), reopened.get(4));
+		reopened.close();
+	}
+
+	@Test
+	public void unpublishedLinesAreNotCounted() throws IOException {
+		MappedRecordFile file = new MappedRecordFile(recordFile.getPath());
+		file.addAll(Arrays.asList("ANN LEE|1 OAK ST, DAVIS, CA 95616", "NOT TESTED", "", "", "", ""));
+
+		// another view of the file only sees the header, which does not count the
+		// new lines until they are published
+		MappedRecordFile beforePublish = new MappedRecordFile(recordFile.getPath());
+		assertEquals(0, beforePublish.size());
+
+		file.publishLines();
+		MappedRecordFile afterPublish = new MappedRecordFile(recordFile.getPath());
+		assertEquals(6, afterPublish.size());
+		assertEquals("ANN LEE|1 OAK ST, DAVIS, CA 95616", afterPublish.get(0));
+
+		afterPublish.close();
+		beforePublish.close();
+		file.close();
+	}
+
+	@Test
+	public void convertedDatabaseMatchesTheTextFile() throws IOException {
+		ExposureTracker expTracker = new ExposureTracker(new UserDb(textFile.getPath()));
+		User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+		User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE, CAL SMITH");
+		expTracker.close();
+
+		UserDb.convertToMapped(textFile.getPath(), recordFile.getPath());
+		UserDb database = UserDb.openMapped(recordFile.getPath());
+		assertEquals(new UserDb(textFile.getPath()).databaseLines, new ArrayList<>(database.databaseLines));
+
+		// a status written in place is there after the database is closed
+		expTracker = new ExposureTracker(database);
+		expTracker.updateTestStatus(bob, "TESTED NEGATIVE");
+		expTracker.close();
+		database = UserDb.openMapped(recordFile.getPath());
+		assertEquals("TESTED NEGATIVE", database.readTestStatus(bob));
+		assertEquals("FIRST-DEGREE", new ExposureTracker(database).getExposureStatus(bob));
+		database.close();
+	}
+}
@@ -0,0 +1,109 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that merging many records in one pass gives the same records as merging
+ * them one pair at a time: the most severe exposure status, every interaction
+ * name, and every interaction pointing at the surviving record.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class MergeRecordsTest {
+	private File bulkFile;
+	private File pairwiseFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+	private User cal = new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616);
+	private User dee = new User("DEE KAY", "4 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		bulkFile = File.createTempFile("exposure", ".txt");
+		pairwiseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		bulkFile.delete();
+		pairwiseFile.delete();
+	}
+
+	@Test
+	public void bulkMergeMatchesPairwiseMerges() {
+		UserDb bulk = createDatabase(bulkFile);
+		UserDb pairwise = createDatabase(pairwiseFile);
+		assertEquals(bulk.databaseLines, pairwise.databaseLines);
+
+		// BOB's placeholders from ANN, CAL and DEE, merged into DEE's, which has no
+		// exposure status of its own
+		List<Integer> placeholders = bulk.findUnregisteredUser(bob);
+		assertEquals(3, placeholders.size());
+		int survivorLineNum = placeholderNamedBy(bulk, placeholders, "DEE KAY");
+		List<Integer> merged = new ArrayList<>(placeholders);
+		merged.remove(Integer.valueOf(survivorLineNum));
+
+		bulk.mergeRecords(survivorLineNum, merged);
+		for (int recLineNum : merged) {
+			pairwise.mergeRecords(survivorLineNum, recLineNum);
+		}
+		assertEquals(pairwise.databaseLines, bulk.databaseLines);
+		for (int record = 0; record < bulk.getContactGraph().numRecords(); record++) {
+			assertEquals(pairwise.getContactGraph().rowToLine(record), bulk.getContactGraph().rowToLine(record));
+		}
+
+		// the surviving record has the most severe status and every interaction
+		assertEquals("1", bulk.readExposureStat(survivorLineNum));
+		assertEquals(Arrays.asList("DEE KAY", "ANN LEE", "CAL SMITH"),
+				Arrays.asList(bulk.readInteractions(survivorLineNum)));
+		for (User user : Arrays.asList(ann, cal, dee)) {
+			List<String> linked = Arrays.asList(bulk.readInteractionsRecLineNum(bulk.findRegisteredUser(user)));
+			assertTrue(linked.contains(Integer.toString(survivorLineNum)));
+		}
+		assertEquals(1, bulk.findUnregisteredUser(bob).size());
+
+		// both were saved the same way
+		bulk.close();
+		pairwise.close();
+		assertEquals(new UserDb(pairwiseFile.getPath()).databaseLines, new UserDb(bulkFile.getPath()).databaseLines);
+	}
+
+	/**
+	 * Registers three users who each name BOB, who has not registered, so BOB has
+	 * a placeholder from each of them. ANN tested positive and CAL interacted
+	 * with ANN, so the placeholders have different exposure statuses.
+	 */
+	private UserDb createDatabase(File databaseFile) {
+		UserDb database = new UserDb(databaseFile.getPath());
+		ExposureTracker expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY, CAL SMITH");
+		expTracker.registerNewUser(cal, "NOT TESTED", "ANN LEE, BOB RAY");
+		expTracker.registerNewUser(dee, "NOT TESTED", "BOB RAY");
+		return database;
+	}
+
+	/**
+	 * Finds the placeholder whose interaction is the given name.
+	 */
+	private static int placeholderNamedBy(UserDb database, List<Integer> placeholders, String name) {
+		for (int recLineNum : placeholders) {
+			if (database.readInteractions(recLineNum)[0].equals(name))
+				return recLineNum;
+		}
+		throw new AssertionError("No placeholder named by " + name);
+	}
+}
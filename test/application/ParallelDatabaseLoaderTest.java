@@ -0,0 +1,93 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that loading a database file on several threads gives the same lines as
+ * reading it on one thread, and the same contact graph as building it from
+ * those lines.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ParallelDatabaseLoaderTest {
+	private File databaseFile;
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+		databaseFile.delete();
+	}
+
+	@Test
+	public void smallFileMatchesASingleThreadedRead() throws IOException {
+		// the last record is cut off before its interactions line, and the last line
+		// has no newline
+		writeFile("ANN LEE|1 OAK ST, DAVIS, CA 95616\nTESTED POSITIVE\n\nBOB RAY|\n6|\n\n"
+				+ "BOB RAY|\n\n1\nANN LEE|\n0|\n\nCAL SMITH|\nNOT TESTED");
+		loadAndCheck();
+	}
+
+	@Test
+	public void fileOfManyChunksMatchesASingleThreadedRead() throws IOException {
+		// a few MB, so the file is cut into several chunks whose boundaries fall in
+		// the middle of records
+		StringBuilder text = new StringBuilder();
+		int numRecords = 40000;
+		for (int record = 0; record < numRecords; record++) {
+			text.append("USER ").append(record).append('|').append(record).append(" OAK ST, DAVIS, CA 95616\n");
+			text.append(record % 3 == 0 ? "TESTED POSITIVE" : "NOT TESTED").append('\n');
+			text.append(record % 4).append('\n');
+			text.append("USER ").append((record + 1) % numRecords).append("|\n");
+
+			// every 1000th record has more interactions than fit in one read buffer
+			int numInteractions = record % 1000 == 0 ? 100 : record % 5;
+			for (int i = 1; i <= numInteractions; i++) {
+				text.append((record + i * 7) % numRecords * 6).append('|');
+			}
+			text.append("\n\n");
+		}
+		writeFile(text.toString());
+		assertTrue(databaseFile.length() > 3 << 20);
+		loadAndCheck();
+	}
+
+	/**
+	 * Loads the file on the pool and checks it against a single-threaded read.
+	 */
+	private void loadAndCheck() throws IOException {
+		List<String> expected = Files.readAllLines(databaseFile.toPath(), StandardCharsets.UTF_8);
+		ParallelDatabaseLoader.LoadedDatabase loaded = new ParallelDatabaseLoader(pool).load(databaseFile.getPath());
+		assertEquals(expected, loaded.getLines());
+
+		ContactGraph expectedGraph = new ContactGraph(expected);
+		ContactGraph graph = loaded.toContactGraph();
+		assertEquals(expectedGraph.numRecords(), graph.numRecords());
+		for (int record = 0; record < graph.numRecords(); record++) {
+			assertEquals(expectedGraph.rowToLine(record), graph.rowToLine(record));
+		}
+	}
+
+	private void writeFile(String text) throws IOException {
+		Files.write(databaseFile.toPath(), text.getBytes(StandardCharsets.UTF_8));
+	}
+}
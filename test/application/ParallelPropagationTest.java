@@ -0,0 +1,127 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a propagation whose frontiers are split between several threads
+ * writes the same exposure statuses as one on a single thread, and visits and
+ * changes the same number of records.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class ParallelPropagationTest {
+	private static final int NUM_RECORDS = 12000;
+
+	private File sequentialFile;
+	private File parallelFile;
+
+	@Before
+	public void setUp() throws IOException {
+		sequentialFile = File.createTempFile("exposure", ".txt");
+		parallelFile = File.createTempFile("exposure", ".txt");
+
+		List<String> lines = createLines();
+		Files.write(sequentialFile.toPath(), lines, StandardCharsets.UTF_8);
+		Files.write(parallelFile.toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	@After
+	public void tearDown() {
+		sequentialFile.delete();
+		parallelFile.delete();
+	}
+
+	@Test
+	public void parallelPropagationMatchesSequential() {
+		UserDb sequentialDb = new UserDb(sequentialFile.getPath());
+		UserDb parallelDb = new UserDb(parallelFile.getPath());
+		ExposurePropagator sequential = new ExposurePropagator(sequentialDb);
+		ExposurePropagator parallel = new ExposurePropagator(parallelDb);
+		parallel.setParallelism(4);
+
+		// one source whose first level is large enough to be split
+		assertTrue(sequentialDb.getContactGraph().degree(0) >= 1024);
+		checkSameResult(sequential.propagate(0, 0), parallel.propagate(0, 0));
+		assertEquals(sequentialDb.databaseLines, parallelDb.databaseLines);
+
+		// several sources reaching some records at the same level
+		List<Integer> sources = Arrays.asList(6 * 6000, 6 * 6001, 6 * 9000);
+		checkSameResult(sequential.propagate(sources, 0), parallel.propagate(sources, 0));
+		assertEquals(sequentialDb.databaseLines, parallelDb.databaseLines);
+		parallel.setParallelism(1);
+
+		// the statuses were saved the same way
+		assertEquals(new UserDb(sequentialFile.getPath()).databaseLines, new UserDb(parallelFile.getPath()).databaseLines);
+	}
+
+	private static void checkSameResult(ExposurePropagator.PropagationStats expected,
+			ExposurePropagator.PropagationStats stats) {
+		assertEquals(expected.getNodesVisited(), stats.getNodesVisited());
+		assertEquals(expected.getRecordsChanged(), stats.getRecordsChanged());
+	}
+
+	/**
+	 * Creates the lines of a database where record 0 interacts with 1500 others and
+	 * every other record with a few random ones, so frontiers reach many
+	 * records from several sides at once. Some users tested positive and some
+	 * already have an exposure status.
+	 */
+	private static List<String> createLines() {
+		List<Set<Integer>> interactions = new ArrayList<>(NUM_RECORDS);
+		for (int record = 0; record < NUM_RECORDS; record++) {
+			interactions.add(new TreeSet<>());
+		}
+
+		Random random = new Random(42);
+		for (int record = 1; record <= 1500; record++) {
+			link(interactions, 0, record);
+		}
+		for (int record = 1; record < NUM_RECORDS; record++) {
+			for (int i = 0; i < 2; i++) {
+				int other = 1 + random.nextInt(NUM_RECORDS - 1);
+				if (other != record)
+					link(interactions, record, other);
+			}
+		}
+
+		List<String> lines = new ArrayList<>(NUM_RECORDS * 6);
+		for (int record = 0; record < NUM_RECORDS; record++) {
+			lines.add("USER " + record + "|" + record + " OAK ST, DAVIS, CA 95616");
+			lines.add(record % 97 == 5 ? "TESTED POSITIVE" : "NOT TESTED");
+			lines.add(record % 89 == 7 ? "2" : "");
+
+			StringBuilder names = new StringBuilder();
+			StringBuilder recordNums = new StringBuilder();
+			for (int other : interactions.get(record)) {
+				names.append("USER ").append(other).append('|');
+				recordNums.append(other * 6).append('|');
+			}
+			lines.add(names.toString());
+			lines.add(recordNums.toString());
+			lines.add("");
+		}
+		return lines;
+	}
+
+	private static void link(List<Set<Integer>> interactions, int record, int other) {
+		interactions.get(record).add(other);
+		interactions.get(other).add(record);
+	}
+}
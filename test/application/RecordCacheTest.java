@@ -0,0 +1,85 @@
+package application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the record cache drops the record read longest ago when it is
+ * full, and that a record read after one of its lines changed is decoded again
+ * instead of coming from the cache.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class RecordCacheTest {
+	private File databaseFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+	}
+
+	@Test
+	public void fullCacheDropsTheRecordReadLongestAgo() {
+		RecordCache cache = new RecordCache(2);
+		RecordCache.CachedRecord record = new RecordCache.CachedRecord("NOT TESTED", 0, new String[0]);
+		cache.put(0, record);
+		cache.put(6, record);
+
+		// reading record 0 makes record 6 the one read longest ago
+		assertEquals(record, cache.get(0));
+		cache.put(12, record);
+		assertNull(cache.get(6));
+		assertEquals(record, cache.get(0));
+		assertEquals(record, cache.get(12));
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void changedRecordIsReadAgain() {
+		UserDb database = new UserDb(databaseFile.getPath());
+		ExposureTracker expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+		expTracker.registerNewUser(ann, "NOT TESTED", "BOB RAY");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE");
+
+		// the second read comes from the cache
+		database.readRecord(bob);
+		long hitsBefore = database.getRecordCache().getHits();
+		assertEquals("NOT TESTED", database.readRecord(bob).getTestStatus());
+		assertEquals(hitsBefore + 1, database.getRecordCache().getHits());
+
+		// a changed test status, exposure level and interaction list are all read again
+		expTracker.updateTestStatus(bob, "TESTED NEGATIVE");
+		assertEquals("TESTED NEGATIVE", database.readRecord(bob).getTestStatus());
+		expTracker.updateTestStatus(ann, "TESTED POSITIVE");
+		assertEquals(1, database.readRecord(bob).getExposureLevel());
+		expTracker.addInteractions(bob, "CAL SMITH");
+		assertArrayEquals(new String[] { "ANN LEE", "CAL SMITH" }, database.readRecord(bob).getInteractions());
+
+		// a change that is rolled back is not left in the cache
+		database.beginTransaction();
+		database.writeTestStatus(bob, "TESTED POSITIVE");
+		assertEquals("TESTED POSITIVE", database.readRecord(bob).getTestStatus());
+		database.rollbackTransaction();
+		assertEquals("TESTED NEGATIVE", database.readRecord(bob).getTestStatus());
+		expTracker.close();
+	}
+}
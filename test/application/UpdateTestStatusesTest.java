@@ -0,0 +1,101 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that updating many test statuses at once gives the same records as
+ * updating them one at a time, and that a batch with an unregistered user
+ * changes nothing.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UpdateTestStatusesTest {
+	private File batchFile;
+	private File sequentialFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+	private User cal = new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616);
+	private User dee = new User("DEE KAY", "4 Oak St", "Davis", "CA", 95616);
+	private User eve = new User("EVE DOE", "5 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		batchFile = File.createTempFile("exposure", ".txt");
+		sequentialFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		batchFile.delete();
+		sequentialFile.delete();
+	}
+
+	@Test
+	public void batchMatchesSequentialUpdates() {
+		ExposureTracker batch = createTracker(batchFile);
+		ExposureTracker sequential = createTracker(sequentialFile);
+
+		// ANN's positive result is withdrawn, two others test positive, and CAL's
+		// first result is replaced by a later one
+		List<ExposureTracker.TestResult> results = Arrays.asList(new ExposureTracker.TestResult(ann, "TESTED NEGATIVE"),
+				new ExposureTracker.TestResult(cal, "TESTED POSITIVE"),
+				new ExposureTracker.TestResult(eve, "TESTED POSITIVE"),
+				new ExposureTracker.TestResult(cal, "NOT TESTED"),
+				new ExposureTracker.TestResult(bob, "TESTED POSITIVE"));
+		batch.updateTestStatuses(results);
+
+		sequential.updateTestStatus(ann, "TESTED NEGATIVE");
+		sequential.updateTestStatus(eve, "TESTED POSITIVE");
+		sequential.updateTestStatus(cal, "NOT TESTED");
+		sequential.updateTestStatus(bob, "TESTED POSITIVE");
+
+		batch.close();
+		sequential.close();
+		assertEquals(new UserDb(sequentialFile.getPath()).databaseLines, new UserDb(batchFile.getPath()).databaseLines);
+	}
+
+	@Test
+	public void unregisteredUserChangesNothing() {
+		ExposureTracker expTracker = createTracker(batchFile);
+		UserDb database = new UserDb(batchFile.getPath());
+		List<String> linesBefore = new ArrayList<>(database.databaseLines);
+
+		try {
+			expTracker.updateTestStatuses(Arrays.asList(new ExposureTracker.TestResult(bob, "TESTED POSITIVE"),
+					new ExposureTracker.TestResult(new User("FAY ROE", "6 Oak St", "Davis", "CA", 95616), "TESTED POSITIVE")));
+			fail("An unregistered user was accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		expTracker.close();
+		assertEquals(linesBefore, new UserDb(batchFile.getPath()).databaseLines);
+	}
+
+	/**
+	 * Registers the same users in a new database: a chain ANN - BOB - CAL - DEE -
+	 * EVE where ANN tested positive, and a person only EVE named.
+	 */
+	private ExposureTracker createTracker(File databaseFile) {
+		ExposureTracker expTracker = new ExposureTracker(new UserDb(databaseFile.getPath()));
+		expTracker.setFuzzyNameMatching(false);
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE, CAL SMITH");
+		expTracker.registerNewUser(cal, "NOT TESTED", "BOB RAY, DEE KAY");
+		expTracker.registerNewUser(dee, "NOT TESTED", "CAL SMITH, EVE DOE");
+		expTracker.registerNewUser(eve, "NOT TESTED", "DEE KAY, FAY ROE");
+		return expTracker;
+	}
+}
@@ -0,0 +1,105 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that compacting the database removes the records cleared by merges and
+ * changes every interaction record line number so it still points to the same
+ * user.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UserDbCompactionTest {
+	private File databaseFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+	private User cal = new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616);
+	private User dee = new User("DEE KAY", "4 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+		new File(databaseFile.getPath() + ".log").delete();
+	}
+
+	@Test
+	public void compactionKeepsInteractionsLinked() {
+		compactAndCheck(new UserDb(databaseFile.getPath()));
+	}
+
+	@Test
+	public void journaledChangesAreWrittenBeforeCompaction() {
+		UserDb database = new UserDb(databaseFile.getPath(), true);
+		compactAndCheck(database);
+		assertFalse(new File(databaseFile.getPath() + ".log").exists());
+	}
+
+	/**
+	 * Builds a database with cleared records, compacts it and checks that every
+	 * user keeps the same interactions, in memory and in the file.
+	 */
+	private void compactAndCheck(UserDb database) {
+		ExposureTracker expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+
+		// ANN and DEE both name BOB and CAL, so registering BOB and CAL merges two
+		// empty records each, clearing one of them
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY, CAL SMITH");
+		expTracker.registerNewUser(dee, "NOT TESTED", "BOB RAY, CAL SMITH");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE, DEE KAY");
+		expTracker.registerNewUser(cal, "NOT TESTED", "ANN LEE, DEE KAY, EVE DOE");
+		List<String> before = describeRecords(database);
+		int numRecordsBefore = database.databaseLines.size() / 6;
+
+		assertEquals(2, database.compact());
+		assertEquals(numRecordsBefore - 2, database.databaseLines.size() / 6);
+		assertEquals(before, describeRecords(database));
+		expTracker.close();
+
+		// the file holds the compacted records
+		assertEquals(before, describeRecords(new UserDb(databaseFile.getPath())));
+	}
+
+	/**
+	 * Describes every record that is not cleared by its own lines and the first
+	 * lines of the records its interaction record line numbers point to.
+	 */
+	private static List<String> describeRecords(UserDb database) {
+		List<String> described = new ArrayList<>();
+		for (int lineNum = 0; lineNum < database.databaseLines.size(); lineNum += 6) {
+			if (database.isRecordCleared(lineNum))
+				continue;
+
+			List<String> linked = new ArrayList<>();
+			for (String interactionLineNum : database.readInteractionsRecLineNum(lineNum)) {
+				if (!interactionLineNum.isEmpty())
+					linked.add(database.databaseLines.get(Integer.parseInt(interactionLineNum)));
+			}
+			Collections.sort(linked);
+
+			described.add(database.databaseLines.get(lineNum) + " / " + database.readTestStatus(lineNum) + " / "
+					+ database.readExposureStat(lineNum) + " / " + String.join(",", database.readInteractions(lineNum))
+					+ " -> " + linked);
+		}
+		Collections.sort(described);
+		return described;
+	}
+}
@@ -0,0 +1,78 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the database file is replaced as a whole: a rewrite leaves the
+ * complete new file and nothing else, and a rewrite that fails leaves the old
+ * file as it was.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UserDbFileTest {
+	private File databaseFile;
+	private File tempFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		tempFile = new File(databaseFile.getPath() + ".tmp");
+	}
+
+	@After
+	public void tearDown() {
+		new File(tempFile, "other").delete();
+		tempFile.delete();
+		databaseFile.delete();
+	}
+
+	@Test
+	public void syncedRewriteLeavesOnlyTheNewFile() throws IOException {
+		UserDb database = new UserDb(databaseFile.getPath());
+		database.setSyncWrites(true);
+		new ExposureTracker(database).registerNewUser(ann, "TESTED POSITIVE", "BOB RAY");
+
+		assertTrue(database.writeToDatabaseFile());
+		assertFalse(tempFile.exists());
+		assertEquals(String.join("\n", database.databaseLines) + "\n", readFile());
+	}
+
+	@Test
+	public void failedRewriteKeepsTheOldFile() throws IOException {
+		UserDb database = new UserDb(databaseFile.getPath());
+		ExposureTracker expTracker = new ExposureTracker(database);
+		expTracker.registerNewUser(ann, "NOT TESTED", "BOB RAY");
+		String saved = readFile();
+
+		// a directory that cannot be removed stands where the temporary file goes
+		assertTrue(tempFile.mkdir());
+		assertTrue(new File(tempFile, "other").createNewFile());
+		expTracker.updateTestStatus(ann, "TESTED POSITIVE");
+		assertFalse(database.writeToDatabaseFile());
+		assertEquals(saved, readFile());
+
+		// once it is gone, the next rewrite saves every change
+		new File(tempFile, "other").delete();
+		tempFile.delete();
+		assertTrue(database.writeToDatabaseFile());
+		assertEquals("TESTED POSITIVE", new UserDb(databaseFile.getPath()).readTestStatus(ann));
+	}
+
+	private String readFile() throws IOException {
+		return new String(Files.readAllBytes(databaseFile.toPath()), StandardCharsets.UTF_8);
+	}
+}
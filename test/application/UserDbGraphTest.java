@@ -0,0 +1,81 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the interaction record line numbers kept in the contact graph are
+ * the ones saved on the 5th line of every record, after records were added and
+ * merged, and that the saved file loads back into the same graph.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UserDbGraphTest {
+	private File databaseFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+	private User cal = new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616);
+	private User dee = new User("DEE KAY", "4 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+	}
+
+	@Test
+	public void savedLinesMatchTheGraphAfterMerges() {
+		UserDb database = new UserDb(databaseFile.getPath());
+		ExposureTracker expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+
+		// BOB and CAL are named by two users each before they register, so their empty
+		// records are merged into their registered ones
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY, CAL SMITH");
+		expTracker.registerNewUser(dee, "NOT TESTED", "BOB RAY, CAL SMITH");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE, DEE KAY");
+		expTracker.registerNewUser(cal, "NOT TESTED", "ANN LEE, DEE KAY, EVE DOE");
+		expTracker.addInteractions(ann, "DEE KAY");
+		assertGraphMatchesLines(database.getContactGraph(), database);
+
+		// no record links to a cleared one
+		ContactGraph graph = database.getContactGraph();
+		IntList neighbours = new IntList();
+		for (int record = 0; record < graph.numRecords(); record++) {
+			neighbours.clear();
+			graph.copyNeighbours(record, neighbours);
+			for (int i = 0; i < neighbours.size(); i++) {
+				assertFalse(database.isRecordCleared(neighbours.get(i) * 6));
+			}
+		}
+		expTracker.close();
+
+		// the file loads back into the same graph
+		UserDb reloaded = new UserDb(databaseFile.getPath());
+		assertEquals(database.databaseLines, reloaded.databaseLines);
+		assertGraphMatchesLines(reloaded.getContactGraph(), database);
+	}
+
+	/**
+	 * Checks that every row of the graph is the saved 5th line of its record.
+	 */
+	private static void assertGraphMatchesLines(ContactGraph graph, UserDb database) {
+		assertEquals(database.databaseLines.size() / 6, graph.numRecords());
+		for (int record = 0; record < graph.numRecords(); record++) {
+			assertEquals(database.databaseLines.get(record * 6 + 4), graph.rowToLine(record));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that looking records up through the name and name|address indexes
+ * finds the same records as searching through every line of the database,
+ * while records are registered, added as empty records and merged.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UserDbIndexTest {
+	private File databaseFile;
+	private UserDb database;
+	private ExposureTracker expTracker;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User bob = new User("BOB RAY", "2 Oak St", "Davis", "CA", 95616);
+	private User dee = new User("DEE KAY", "4 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		database = new UserDb(databaseFile.getPath());
+		expTracker = new ExposureTracker(database);
+		expTracker.setFuzzyNameMatching(false);
+	}
+
+	@After
+	public void tearDown() {
+		expTracker.close();
+		databaseFile.delete();
+	}
+
+	@Test
+	public void lookupsMatchASearchOfEveryLine() {
+		// ANN and DEE each name BOB, so BOB has two empty records
+		expTracker.registerNewUser(ann, "NOT TESTED", "BOB RAY, CAL SMITH");
+		expTracker.registerNewUser(dee, "NOT TESTED", "BOB RAY");
+		assertEquals(2, database.findUnregisteredUser(new User("BOB RAY")).size());
+		assertIndexesMatchSearch();
+
+		// registering BOB merges both empty records into one
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE, DEE KAY");
+		assertEquals(0, database.findUnregisteredUser(new User("bob ray")).size());
+		assertIndexesMatchSearch();
+
+		// the same name at another address is a second registered record
+		User otherBob = new User("BOB RAY", "9 Elm St", "Davis", "CA", 95616);
+		expTracker.registerNewUser(otherBob, "NOT TESTED", "CAL SMITH");
+		assertTrue(database.findRegisteredUser(otherBob) != database.findRegisteredUser(bob));
+		assertIndexesMatchSearch();
+	}
+
+	@Test
+	public void indexesAreRebuiltWhenTheDatabaseIsOpened() {
+		expTracker.registerNewUser(ann, "NOT TESTED", "BOB RAY, CAL SMITH");
+		expTracker.registerNewUser(bob, "NOT TESTED", "ANN LEE");
+		expTracker.close();
+
+		database = new UserDb(databaseFile.getPath());
+		expTracker = new ExposureTracker(database);
+		assertIndexesMatchSearch();
+	}
+
+	/**
+	 * Checks every name and name|address in the database against the records a
+	 * search through every line finds.
+	 */
+	private void assertIndexesMatchSearch() {
+		for (int lineNum = 0; lineNum < database.databaseLines.size(); lineNum += 6) {
+			User user = database.retrieveUser(lineNum);
+			if (user == null)
+				continue;
+
+			assertEquals(user.getName(), firstNamed(user.getName()), database.index.findName(user.getName()));
+			assertEquals(user.getName(), searchEmptyRecords(user.getName()), database.findUnregisteredUser(user));
+			if (!user.getAddr().toString().equals(""))
+				assertEquals(user.toString(), firstRegistered(user.toString()), database.findRegisteredUser(user));
+		}
+
+		// a name that is not in the database is not found
+		assertFalse(database.nameExistsInDb(new User("ZED ZULU", "1 Oak St", "Davis", "CA", 95616)));
+	}
+
+	/**
+	 * Searches every line for the first record with a name.
+	 */
+	private int firstNamed(String name) {
+		for (int lineNum = 0; lineNum < database.databaseLines.size(); lineNum += 6) {
+			if (database.databaseLines.get(lineNum).startsWith(name + "|"))
+				return lineNum;
+		}
+		return -1;
+	}
+
+	/**
+	 * Searches every line for the first registered record with a name|address.
+	 */
+	private int firstRegistered(String nameAndAddress) {
+		for (int lineNum = 0; lineNum < database.databaseLines.size(); lineNum += 6) {
+			if (database.databaseLines.get(lineNum).equals(nameAndAddress))
+				return lineNum;
+		}
+		return -1;
+	}
+
+	/**
+	 * Searches every line for the empty records with a name.
+	 */
+	private List<Integer> searchEmptyRecords(String name) {
+		List<Integer> found = new ArrayList<>();
+		for (int lineNum = 0; lineNum < database.databaseLines.size(); lineNum += 6) {
+			if (database.databaseLines.get(lineNum).equals(name + "|"))
+				found.add(lineNum);
+		}
+		return found;
+	}
+}
@@ -0,0 +1,111 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a transaction saves all of its changes in one write, and that
+ * rolling back a transaction that added records leaves the lines, indexes and
+ * contact graph as they were before it began.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UserDbTransactionTest {
+	private File databaseFile;
+	private File journalFile;
+
+	private User ann = new User("ANN LEE", "1 Oak St", "Davis", "CA", 95616);
+	private User cal = new User("CAL SMITH", "3 Oak St", "Davis", "CA", 95616);
+
+	@Before
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("exposure", ".txt");
+		journalFile = new File(databaseFile.getPath() + ".log");
+	}
+
+	@After
+	public void tearDown() {
+		databaseFile.delete();
+		journalFile.delete();
+	}
+
+	@Test
+	public void trackerOperationIsSavedInOneWrite() throws IOException {
+		UserDb database = new UserDb(databaseFile.getPath(), true);
+		ExposureTracker expTracker = new ExposureTracker(database);
+
+		// the registration adds three records and links them, in one journal batch
+		expTracker.registerNewUser(ann, "TESTED POSITIVE", "BOB RAY, CAL SMITH");
+		assertEquals(1, countCommits());
+
+		// a nested transaction is only saved by the outermost commit
+		database.beginTransaction();
+		database.beginTransaction();
+		database.writeTestStatus(ann, "TESTED NEGATIVE");
+		database.commitTransaction();
+		assertEquals(1, countCommits());
+		database.commitTransaction();
+		assertEquals(2, countCommits());
+		expTracker.close();
+	}
+
+	@Test
+	public void rollbackRemovesAddedRecords() throws IOException {
+		UserDb database = new UserDb(databaseFile.getPath());
+		ExposureTracker expTracker = new ExposureTracker(database);
+		expTracker.registerNewUser(ann, "NOT TESTED", "BOB RAY");
+		List<String> linesBefore = new ArrayList<>(database.databaseLines);
+		String fileBefore = readFile();
+
+		database.beginTransaction();
+		int calLineNum = database.writeNewUser(cal, "TESTED POSITIVE", "ANN LEE");
+		database.writeInteractionsRecLineNum(calLineNum, "0|");
+		database.writeInteractions(ann, "CAL SMITH");
+		database.writeInteractionsRecLineNum(0, calLineNum + "|");
+		database.writeTestStatus(ann, "TESTED NEGATIVE");
+		assertEquals("TESTED NEGATIVE", database.readRecord(ann).getTestStatus());
+		database.rollbackTransaction();
+
+		assertEquals(linesBefore, database.databaseLines);
+		assertEquals(fileBefore, readFile());
+
+		// the added record can no longer be found, and the graph no longer has it
+		assertEquals(-1, database.findRegisteredUser(cal));
+		assertEquals(linesBefore.size() / 6, database.getContactGraph().numRecords());
+		assertEquals("6|", database.getContactGraph().rowToLine(0));
+		assertEquals("NOT TESTED", database.readRecord(ann).getTestStatus());
+		assertEquals(1, database.readRecord(ann).getInteractions().length);
+
+		// records added after the rollback take the place of the removed ones
+		expTracker.registerNewUser(cal, "NOT TESTED", "ANN LEE");
+		assertEquals(linesBefore.size(), database.findRegisteredUser(cal));
+		expTracker.close();
+	}
+
+	/**
+	 * Counts the batches in the journal.
+	 */
+	private int countCommits() throws IOException {
+		int numCommits = 0;
+		for (String line : Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8)) {
+			if (line.equals("COMMIT"))
+				numCommits++;
+		}
+		return numCommits;
+	}
+
+	private String readFile() throws IOException {
+		return new String(Files.readAllBytes(databaseFile.toPath()), StandardCharsets.UTF_8);
+	}
+}
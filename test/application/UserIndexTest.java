@@ -0,0 +1,101 @@
+package application;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests which misspelled names UserIndex links to an existing name, and that a
+ * user's interactions are never linked to the user.
+ *
+ * @author Thi Nguyen, Minh Nguyen, Sunny Mistry, T.K. Bui
+ *
+ */
+public class UserIndexTest {
+	private UserIndex index;
+
+	@Before
+	public void setUp() {
+		index = new UserIndex();
+		index.add(0, "ANN LEE|1 OAK ST, DAVIS, CA 95616");
+		index.add(6, "JOHN SMITH|2 OAK ST, DAVIS, CA 95616");
+		index.add(12, "MARGARET ELIZABETH|3 OAK ST, DAVIS, CA 95616");
+		index.add(18, "DAVID JONES|4 OAK ST, DAVIS, CA 95616");
+		index.add(24, "DAVID JONAS|5 OAK ST, DAVIS, CA 95616");
+	}
+
+	@Test
+	public void exactNameIsFoundInAnyCase() {
+		assertEquals("ANN LEE", index.findSimilarName(" ann lee "));
+	}
+
+	@Test
+	public void oneEditIsAcceptedFromEightCharacters() {
+		// "JON SMITH" is 9 characters and 1 edit from "JOHN SMITH"
+		assertEquals("JOHN SMITH", index.findSimilarName("JON SMITH"));
+		// "JOHN SMIT" is 9 characters and 1 edit away as well
+		assertEquals("JOHN SMITH", index.findSimilarName("JOHN SMIT"));
+	}
+
+	@Test
+	public void shortNamesMustMatchExactly() {
+		// "AN LEE" and "ANN LE" are 1 edit from "ANN LEE" but shorter than 8
+		assertNull(index.findSimilarName("AN LEE"));
+		assertNull(index.findSimilarName("ANN LE"));
+	}
+
+	@Test
+	public void twoEditsAreOnlyAcceptedFromSixteenCharacters() {
+		// 17 characters, 2 edits from "MARGARET ELIZABETH"
+		assertEquals("MARGARET ELIZABETH", index.findSimilarName("MARGRET ELIZABTH"));
+		// 10 characters, 2 edits from "JOHN SMITH"
+		assertNull(index.findSimilarName("JON SMITHE"));
+		// 17 characters, 3 edits from "MARGARET ELIZABETH"
+		assertNull(index.findSimilarName("MARGRET ELIZBTH"));
+	}
+
+	@Test
+	public void ambiguousNameIsNotMatched() {
+		// "DAVID JONUS" is 1 edit from both "DAVID JONES" and "DAVID JONAS"
+		assertNull(index.findSimilarName("DAVID JONUS"));
+	}
+
+	@Test
+	public void excludedNameIsNeverReturnedForAMisspelling() {
+		assertNull(index.findSimilarName("JON SMITH", "John Smith"));
+		// with one of two close names excluded, the other one is certain
+		assertEquals("DAVID JONAS", index.findSimilarName("DAVID JONUS", "DAVID JONES"));
+		// an exact match is still the name itself
+		assertEquals("JOHN SMITH", index.findSimilarName("JOHN SMITH", "JOHN SMITH"));
+	}
+
+	@Test
+	public void interactionIsNeverResolvedToTheUser() throws IOException {
+		File databaseFile = File.createTempFile("exposure", ".txt");
+		ExposureTracker expTracker = new ExposureTracker(new UserDb(databaseFile.getPath()));
+		try {
+			User john = new User("JOHN SMITH", "2 Oak St", "Davis", "CA", 95616);
+			User jon = new User("JON SMITH", "6 Oak St", "Davis", "CA", 95616);
+
+			// "JON SMITH" is 1 edit from the registering user's own name, so it stays as
+			// typed instead of becoming an interaction with the user
+			expTracker.registerNewUser(john, "NOT TESTED", "JON SMITH");
+			assertArrayEquals(new String[] { "JON SMITH" }, expTracker.getUserInteractions(john));
+
+			// the same holds for interactions added later, where "JON SMIT" is 1 edit
+			// from "JON SMITH" and 2 from "JOHN SMITH"
+			expTracker.registerNewUser(jon, "NOT TESTED", "JOHN SMITH");
+			expTracker.addInteractions(jon, "JON SMIT");
+			assertArrayEquals(new String[] { "JOHN SMITH", "JON SMIT" }, expTracker.getUserInteractions(jon));
+		} finally {
+			expTracker.close();
+			databaseFile.delete();
+		}
+	}
+}